@@ -2,6 +2,7 @@ plugins {
     id("java")
     id("org.jetbrains.kotlin.jvm") version "1.9.25"
     id("org.jetbrains.intellij") version "1.17.4"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "io.github.robertomahl"
@@ -11,12 +12,26 @@ repositories {
     mavenCentral()
 }
 
+dependencies {
+    // The platform test framework runs on JUnit 4, which it no longer brings along
+    testImplementation("junit:junit:4.13.2")
+}
+
 intellij {
     version.set("2024.2")
     type.set("IC")
     plugins.set(listOf("com.intellij.java"))
 }
 
+// Benchmarks live in src/jmh and run with "./gradlew jmh", reporting throughput along with the allocation rate
+jmh {
+    jmhVersion.set("1.37")
+    benchmarkMode.set(listOf("thrpt"))
+    timeUnit.set("s")
+    profilers.set(listOf("gc"))
+    resultFormat.set("JSON")
+}
+
 tasks {
     withType<JavaCompile> {
         sourceCompatibility = "17"
@@ -27,6 +42,15 @@ tasks {
         kotlinOptions.jvmTarget = "17"
     }
 
+    // Aggregates recordings without an IDE, for instance on CI:
+    // ./gradlew aggregateRecordings --args="--scope-package com.acme --output summary.plrs recording.jfr"
+    register<JavaExec>("aggregateRecordings") {
+        group = "profiler lens"
+        description = "Aggregates JFR recordings into a result file that the plugin can open"
+        classpath = sourceSets["main"].runtimeClasspath
+        mainClass.set("io.github.robertomahl.visualjavaprofiler.cli.HeadlessAggregator")
+    }
+
     patchPluginXml {
         sinceBuild.set("232")
         untilBuild.set("252.*")
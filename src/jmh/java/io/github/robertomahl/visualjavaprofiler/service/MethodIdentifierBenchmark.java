@@ -0,0 +1,71 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordingFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the frames of a recording by method, either by building an identifier string for every frame, as samples
+ * used to be counted, or by interning methods into a {@link MethodTable} and only building identifiers at the end.
+ */
+@State(Scope.Benchmark)
+public class MethodIdentifierBenchmark {
+
+    @Param({"100", "2000"})
+    public int methodCardinality;
+
+    private final List<RecordedMethod> sampledMethods = new ArrayList<>();
+
+    @Setup
+    public void readSampledMethods() throws Exception {
+        Path recording = SyntheticRecordingGenerator.generate(10_000, 16, methodCardinality);
+        try (RecordingFile recordingFile = new RecordingFile(recording)) {
+            while (recordingFile.hasMoreEvents()) {
+                RecordedEvent event = recordingFile.readEvent();
+                if (event.getStackTrace() == null)
+                    continue;
+                for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+                    if (frame.isJavaFrame() && frame.getMethod().getType() != null)
+                        sampledMethods.add(frame.getMethod());
+                }
+            }
+        } finally {
+            Files.deleteIfExists(recording);
+        }
+    }
+
+    @Benchmark
+    public Map<String, Long> identifierPerFrame() {
+        Map<String, Long> counts = new HashMap<>();
+        for (RecordedMethod method : sampledMethods) {
+            String identifier = method.getType().getName() + "." + method.getName() + method.getDescriptor();
+            counts.merge(identifier, 1L, Long::sum);
+        }
+        return counts;
+    }
+
+    @Benchmark
+    public ProcessingMethodResult internedMethodIds() {
+        MethodTable methodTable = new MethodTable();
+        Map<RecordedMethod, Integer> methodIds = new IdentityHashMap<>();
+        MethodCounters counters = new MethodCounters();
+        for (RecordedMethod method : sampledMethods) {
+            int methodId = methodIds.computeIfAbsent(method, methodTable::intern);
+            counters.add(methodId, 1L);
+        }
+        return counters.toResult(methodTable, sampledMethods.size());
+    }
+}
@@ -0,0 +1,36 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Builds a {@link ProcessingMethodResult}, whose construction scans every value for the minimum and maximum.
+ */
+@State(Scope.Benchmark)
+public class ProcessingMethodResultBenchmark {
+
+    @Param({"1000", "100000"})
+    public int methodCount;
+
+    private Map<String, Long> resultMap;
+
+    @Setup
+    public void generateResultMap() {
+        Random random = new Random(42L);
+        resultMap = new HashMap<>();
+        for (int i = 0; i < methodCount; i++) {
+            resultMap.put("synthetic.SyntheticStacks.m" + i + "([II)V", (long) random.nextInt(1_000_000) + 1);
+        }
+    }
+
+    @Benchmark
+    public ProcessingMethodResult minMax() {
+        return new ProcessingMethodResult(resultMap);
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Reads a synthetic recording into method run counts, the way {@link JFRProcessingService} does, with project scope
+ * stubbed as the package of the generated methods.
+ */
+@State(Scope.Benchmark)
+public class RecordingIngestionBenchmark {
+
+    @Param({"10000", "100000"})
+    public int sampleCount;
+
+    @Param({"16", "48"})
+    public int stackDepth;
+
+    @Param({"100", "2000"})
+    public int methodCardinality;
+
+    private final ProfilingMetricProcessingMethod processingMethod = new MethodRunCountProcessingMethod();
+
+    private Path recording;
+
+    @Setup
+    public void generateRecording() throws Exception {
+        recording = SyntheticRecordingGenerator.generate(sampleCount, stackDepth, methodCardinality);
+    }
+
+    @TearDown
+    public void deleteRecording() throws Exception {
+        Files.deleteIfExists(recording);
+    }
+
+    @Benchmark
+    public ProcessingMethodResult methodRunCount() throws Exception {
+        MethodTable methodTable = new MethodTable();
+        Map<ProfilingMetricProcessingMethod, EventAggregator> aggregators =
+                new RecordingEventDispatcher(List.of(processingMethod)).dispatch(recording, methodTable);
+
+        MethodScope methodScope = MethodScope.resolve(methodTable,
+                className -> className.startsWith(SyntheticRecordingGenerator.GENERATED_PACKAGE + "."));
+        return aggregators.get(processingMethod).getResult(Attribution.SELF, methodScope, ResultFilter.ALL);
+    }
+}
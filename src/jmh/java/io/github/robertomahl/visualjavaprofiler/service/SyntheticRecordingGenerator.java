@@ -0,0 +1,116 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import jdk.jfr.Event;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+/**
+ * Writes recordings of execution samples whose shape is fully controlled: the number of samples, the depth of their
+ * stacks and the number of distinct methods on them.
+ * <p>
+ * Real samples can only be taken by the JVM, so samples are user events named like them, committed at the end of call
+ * chains through generated methods. Each generated method calls one of {@link #SUCCESSORS} others picked at random,
+ * which makes stacks share callers the way real ones do.
+ */
+final class SyntheticRecordingGenerator {
+
+    static final String GENERATED_PACKAGE = "synthetic";
+
+    private static final String GENERATED_CLASS = "SyntheticStacks";
+    private static final int SUCCESSORS = 4;
+    private static final long SEED = 42L;
+
+    private SyntheticRecordingGenerator() {
+    }
+
+    /**
+     * Records the given number of samples into a new temporary file. Stack depths exclude the few frames that lead into
+     * the generated methods.
+     */
+    static Path generate(int sampleCount, int stackDepth, int methodCardinality) throws Exception {
+        Random random = new Random(SEED);
+        Path classDirectory = Files.createTempDirectory("synthetic-stacks");
+        compile(classDirectory, generateSource(methodCardinality, random));
+
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{classDirectory.toUri().toURL()},
+                SyntheticRecordingGenerator.class.getClassLoader())) {
+            Class<?> stacksClass = classLoader.loadClass(GENERATED_PACKAGE + "." + GENERATED_CLASS);
+            stacksClass.getField("sample").set(null, (Runnable) () -> new SyntheticSample().commit());
+
+            MethodHandle[] roots = new MethodHandle[methodCardinality];
+            MethodType methodType = MethodType.methodType(void.class, int[].class, int.class);
+            for (int i = 0; i < methodCardinality; i++) {
+                roots[i] = MethodHandles.publicLookup().findStatic(stacksClass, "m" + i, methodType);
+            }
+
+            Path recordingFile = Files.createTempFile("synthetic", ".jfr");
+            try (Recording recording = new Recording()) {
+                recording.enable(SyntheticSample.class);
+                recording.start();
+
+                int[] path = new int[stackDepth - 1];
+                for (int sample = 0; sample < sampleCount; sample++) {
+                    for (int depth = 0; depth < path.length; depth++) {
+                        path[depth] = random.nextInt(SUCCESSORS);
+                    }
+                    roots[random.nextInt(methodCardinality)].invokeExact(path, 0);
+                }
+
+                recording.stop();
+                recording.dump(recordingFile);
+            } catch (Throwable ex) {
+                Files.deleteIfExists(recordingFile);
+                throw ex instanceof Exception exception ? exception : new IllegalStateException(ex);
+            }
+            return recordingFile;
+        }
+    }
+
+    private static String generateSource(int methodCardinality, Random random) {
+        StringBuilder source = new StringBuilder()
+                .append("package ").append(GENERATED_PACKAGE).append(";\n")
+                .append("public final class ").append(GENERATED_CLASS).append(" {\n")
+                .append("    public static Runnable sample;\n");
+
+        for (int i = 0; i < methodCardinality; i++) {
+            source.append("    public static void m").append(i).append("(int[] path, int depth) {\n")
+                    .append("        if (depth == path.length) { sample.run(); return; }\n")
+                    .append("        switch (path[depth]) {\n");
+            for (int successor = 0; successor < SUCCESSORS; successor++) {
+                source.append("            case ").append(successor).append(": m")
+                        .append(random.nextInt(methodCardinality)).append("(path, depth + 1); break;\n");
+            }
+            source.append("        }\n")
+                    .append("    }\n");
+        }
+        return source.append("}\n").toString();
+    }
+
+    private static void compile(Path classDirectory, String source) throws IOException {
+        Path sourceFile = classDirectory.resolve(GENERATED_CLASS + ".java");
+        Files.writeString(sourceFile, source);
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null)
+            throw new IllegalStateException("Benchmarks must run on a JDK, since synthetic stacks are compiled on the fly");
+        if (compiler.run(null, null, null, "-d", classDirectory.toString(), sourceFile.toString()) != 0)
+            throw new IOException("Could not compile " + sourceFile);
+    }
+
+    @Name("jdk.ExecutionSample")
+    @StackTrace(true)
+    static final class SyntheticSample extends Event {
+    }
+}
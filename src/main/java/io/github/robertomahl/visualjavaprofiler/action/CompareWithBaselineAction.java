@@ -0,0 +1,79 @@
+package io.github.robertomahl.visualjavaprofiler.action;
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.fileChooser.FileChooser;
+import com.intellij.openapi.fileChooser.FileChooserDescriptor;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.VirtualFile;
+import io.github.robertomahl.visualjavaprofiler.service.JFRProcessingService;
+import java.io.IOException;
+import java.nio.file.Path;
+import org.jetbrains.annotations.NotNull;
+
+public class CompareWithBaselineAction extends AnAction {
+
+    @Override
+    public void update(AnActionEvent e) {
+        Project project = e.getProject();
+
+        e.getPresentation().setEnabled(project != null
+                && project.getService(JFRProcessingService.class).isProfilingResultsProcessed()
+                && !DumbService.isDumb(project));
+        e.getPresentation().setText(project != null && project.getService(JFRProcessingService.class).isComparingWithBaseline()
+                ? "Stop Comparing with Baseline"
+                : "Compare with Baseline");
+    }
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.EDT;
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) return;
+
+        JFRProcessingService jfrProcessingService = project.getService(JFRProcessingService.class);
+        if (jfrProcessingService.isComparingWithBaseline()) {
+            jfrProcessingService.clearBaseline();
+            new ToggleVisualizationAction().refresh(project);
+            return;
+        }
+
+        FileChooserDescriptor descriptor = new FileChooserDescriptor(true, false, false, false, false, false)
+                .withTitle("Select Baseline JFR File")
+                .withDescription("Choose the Java Flight Recorder (JFR) file, or a result file written by the headless aggregator, "
+                        + "to compare the current results against.");
+
+        VirtualFile file = FileChooser.chooseFile(descriptor, project, null);
+        if (file == null)
+            return;
+
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Processing Baseline JFR File", true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                try {
+                    indicator.setIndeterminate(false);
+                    indicator.setText("Reading " + file.getName());
+                    jfrProcessingService.readBaseline(Path.of(file.getPath()), indicator);
+
+                    ApplicationManager.getApplication().invokeLater(() -> new ToggleVisualizationAction().refresh(project));
+                } catch (IOException ex) {
+                    ApplicationManager.getApplication().invokeLater(() -> {
+                        Messages.showErrorDialog(project, "Invalid file. Please select a valid JFR or result file. " + ex.getMessage(), "Error");
+                    });
+                }
+            }
+        });
+    }
+
+}
@@ -0,0 +1,117 @@
+package io.github.robertomahl.visualjavaprofiler.action;
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.util.ClassUtil;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import io.github.robertomahl.visualjavaprofiler.service.JFRProcessingService;
+import io.github.robertomahl.visualjavaprofiler.service.ProcessingMethodResult;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Moves to the method ranked right after the one at the caret, among those within the highlight cutoff, wrapping
+ * around to the hottest method after the last one.
+ */
+public class GoToNextHottestMethodAction extends AnAction {
+
+    // Each method looked for costs an index lookup, and results of a stale recording may miss a lot of them
+    private static final int MAX_SEARCHED_METHODS = 100;
+
+    @Override
+    public void update(AnActionEvent e) {
+        Project project = e.getProject();
+
+        e.getPresentation().setEnabled(project != null
+                && project.getService(JFRProcessingService.class).isProfilingResultsProcessed()
+                && project.getService(JFRProcessingService.class).getProfilingResults().hasValues()
+                && !DumbService.isDumb(project));
+    }
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) return;
+
+        JFRProcessingService jfrProcessingService = project.getService(JFRProcessingService.class);
+        ProcessingMethodResult profilingResults = jfrProcessingService.getProfilingResults();
+        if (profilingResults == null || !profilingResults.hasValues())
+            return;
+
+        int cutoffRank = profilingResults.getCutoffRank(jfrProcessingService.getHotMethodCutoff());
+        Editor editor = e.getData(CommonDataKeys.EDITOR);
+        PsiFile psiFile = e.getData(CommonDataKeys.PSI_FILE);
+        int caretOffset = editor != null ? editor.getCaretModel().getOffset() : -1;
+
+        ReadAction.nonBlocking(() -> findNextMethod(project, profilingResults, cutoffRank, psiFile, caretOffset))
+                .inSmartMode(project)
+                .coalesceBy(project, GoToNextHottestMethodAction.class)
+                .expireWith(jfrProcessingService)
+                .finishOnUiThread(ModalityState.defaultModalityState(), method -> {
+                    if (method != null && method.isValid())
+                        method.navigate(true);
+                    else
+                        Messages.showInfoMessage(project, "None of the hottest methods of the profiling result could be found in the project.", "Profiler Lens");
+                })
+                .submit(AppExecutorUtil.getAppExecutorService());
+    }
+
+    /**
+     * Returns the first method found in the project after the rank of the one at the caret, looking at
+     * {@link #MAX_SEARCHED_METHODS} ranks at most. Must be called in a read action.
+     */
+    private static PsiMethod findNextMethod(Project project, ProcessingMethodResult profilingResults, int cutoffRank, PsiFile psiFile, int caretOffset) {
+        int currentRank = getRankAtCaret(profilingResults, psiFile, caretOffset);
+        int firstRank = currentRank < 0 || currentRank + 1 >= cutoffRank ? 0 : currentRank + 1;
+
+        // Methods that are no longer in the sources, e.g. since they were renamed after the recording, are skipped
+        for (int i = 0; i < Math.min(cutoffRank, MAX_SEARCHED_METHODS); i++) {
+            PsiMethod method = findMethod(project, profilingResults.getMethodAtRank((firstRank + i) % cutoffRank));
+            if (method != null)
+                return method;
+        }
+        return null;
+    }
+
+    private static int getRankAtCaret(ProcessingMethodResult profilingResults, PsiFile psiFile, int caretOffset) {
+        if (psiFile == null || caretOffset < 0 || !psiFile.isValid())
+            return -1;
+
+        PsiMethod method = PsiTreeUtil.getParentOfType(psiFile.findElementAt(caretOffset), PsiMethod.class);
+        if (method == null || method.getContainingClass() == null)
+            return -1;
+        return profilingResults.getRank(HighlightPlan.getMethodIdentifier(method));
+    }
+
+    private static PsiMethod findMethod(Project project, String methodIdentifier) {
+        // Identifiers are the binary class name, then the method name and descriptor after the last dot
+        int nameSeparator = methodIdentifier.lastIndexOf('.', methodIdentifier.indexOf('('));
+        PsiClass psiClass = ClassUtil.findPsiClass(PsiManager.getInstance(project), methodIdentifier.substring(0, nameSeparator));
+        if (psiClass == null)
+            return null;
+
+        for (PsiMethod method : psiClass.getMethods()) {
+            if (methodIdentifier.equals(HighlightPlan.getMethodIdentifier(method)))
+                return method;
+        }
+        return null;
+    }
+
+}
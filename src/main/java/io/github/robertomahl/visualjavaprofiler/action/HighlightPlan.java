@@ -0,0 +1,262 @@
+package io.github.robertomahl.visualjavaprofiler.action;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.markup.LineMarkerRenderer;
+import com.intellij.openapi.editor.markup.TextAttributes;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiRecursiveElementWalkingVisitor;
+import com.intellij.psi.PsiTypeElement;
+import com.intellij.psi.util.ClassUtil;
+import com.intellij.ui.JBColor;
+import io.github.robertomahl.visualjavaprofiler.service.DifferentialResult;
+import io.github.robertomahl.visualjavaprofiler.service.HotMethodCutoff;
+import io.github.robertomahl.visualjavaprofiler.service.LineValues;
+import io.github.robertomahl.visualjavaprofiler.service.ProcessingMethodResult;
+import java.awt.Color;
+import java.awt.Font;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The highlights of a single file, shared by all editors of that file. A plan stays valid until either the profiling
+ * results or the {@link HotMethodCutoff} change. Methods ranked beyond the cutoff get no highlight at all, so that files
+ * full of barely sampled methods do not pile up highlighters.
+ * <p>
+ * Highlights are planned lazily, range by range, so that only methods around the visible area of an editor have their
+ * identifiers computed. Ranges are tracked in blocks of {@link #BLOCK_SIZE} characters, and a block is only walked again
+ * once an edit at or before it may have shifted methods into it.
+ * <p>
+ * Highlights hold methods rather than offsets, so that edits elsewhere in the file leave them untouched. Only methods
+ * reported through {@link #invalidate(PsiMethod, int)} are planned again, which keeps typing in a large file from
+ * re-highlighting all of it.
+ * <p>
+ * Lines of a method that have values of their own also get a heat marker in the gutter, so that long methods show
+ * where exactly inside them the metric was recorded.
+ */
+final class HighlightPlan {
+
+    private static final int RED_LIGHT = 255;
+    private static final int GREEN_LIGHT = 165;
+    private static final int BLUE_LIGHT = 0;
+
+    private static final int RED_DARK = 255;
+    private static final int GREEN_DARK = 140;
+    private static final int BLUE_DARK = 0;
+
+    private static final int ALPHA_MAX = 127;
+    private static final int LINE_MARKER_ALPHA_MIN = 63;
+    private static final int LINE_MARKER_WIDTH = 4;
+
+    private static final String CONSTRUCTOR_METHOD_NAME = "<init>";
+
+    private static final int BLOCK_SIZE = 1024;
+
+    private static final Key<CachedMethodDescriptor> METHOD_DESCRIPTOR = Key.create("ProfilerLens.MethodDescriptor");
+
+    private final ProcessingMethodResult profilingResults;
+    private final HotMethodCutoff hotMethodCutoff;
+    private final int cutoffRank;
+
+    // Methods that were planned, with or without a highlight, in the order they were planned
+    private final Map<PsiMethod, MethodHighlight> highlightsByMethod = new LinkedHashMap<>();
+    private final Set<PsiMethod> invalidatedMethods = new HashSet<>();
+    private final BitSet plannedBlocks = new BitSet();
+
+    HighlightPlan(ProcessingMethodResult profilingResults, HotMethodCutoff hotMethodCutoff) {
+        this.profilingResults = profilingResults;
+        this.hotMethodCutoff = hotMethodCutoff;
+        this.cutoffRank = profilingResults.getCutoffRank(hotMethodCutoff);
+    }
+
+    /**
+     * Plans every invalidated method and every method intersecting the given range, and returns all highlights planned
+     * so far. Must be called within a read action.
+     */
+    synchronized List<MethodHighlight> plan(PsiJavaFile psiFile, Document document, int startOffset, int endOffset) {
+        highlightsByMethod.keySet().removeIf(method -> !method.isValid());
+        for (PsiMethod method : invalidatedMethods) {
+            highlightsByMethod.remove(method);
+            if (method.isValid())
+                planMethod(method, document);
+        }
+        invalidatedMethods.clear();
+
+        int firstBlock = plannedBlocks.nextClearBit(startOffset / BLOCK_SIZE);
+        int lastBlock = Math.min((endOffset - 1) / BLOCK_SIZE, psiFile.getTextRange().getEndOffset() / BLOCK_SIZE);
+
+        if (firstBlock <= lastBlock) {
+            int rangeStart = firstBlock * BLOCK_SIZE;
+            int rangeEnd = (lastBlock + 1) * BLOCK_SIZE;
+
+            psiFile.accept(new PsiRecursiveElementWalkingVisitor() {
+                @Override
+                public void visitElement(PsiElement element) {
+                    TextRange textRange = element.getTextRange();
+                    if (textRange.getEndOffset() <= rangeStart || textRange.getStartOffset() >= rangeEnd)
+                        return;
+
+                    if (element instanceof PsiMethod method)
+                        planMethod(method, document);
+                    super.visitElement(element);
+                }
+            });
+            plannedBlocks.set(firstBlock, lastBlock + 1);
+        }
+
+        List<MethodHighlight> highlights = new ArrayList<>(highlightsByMethod.size());
+        for (MethodHighlight highlight : highlightsByMethod.values()) {
+            if (highlight != null)
+                highlights.add(highlight);
+        }
+        return highlights;
+    }
+
+    /**
+     * Marks the method an edit happened in, if any, to be planned again, along with every block from the offset of the
+     * edit onwards, since the edit may have moved methods into them. Called on the UI thread while PSI is being
+     * changed, so it only records what to do.
+     */
+    synchronized void invalidate(PsiMethod method, int offset) {
+        if (method != null)
+            invalidatedMethods.add(method);
+        plannedBlocks.clear(Math.max(0, offset) / BLOCK_SIZE, Math.max(plannedBlocks.length(), offset / BLOCK_SIZE + 1));
+    }
+
+    private void planMethod(PsiMethod method, Document document) {
+        if (method.getContainingClass() == null)
+            return;
+
+        final var methodIdentifier = getMethodIdentifier(method);
+        final var rank = profilingResults.getRank(methodIdentifier);
+        final var isWithinCutoff = rank >= 0 && rank < cutoffRank;
+
+        // Walking a block again finds methods that were planned already, which are kept unless renamed in the meantime
+        if (highlightsByMethod.containsKey(method)) {
+            MethodHighlight plannedHighlight = highlightsByMethod.get(method);
+            if (plannedHighlight == null ? !isWithinCutoff : plannedHighlight.methodIdentifier().equals(methodIdentifier))
+                return;
+        }
+
+        if (!isWithinCutoff) {
+            highlightsByMethod.put(method, null);
+            return;
+        }
+        final var methodResult = profilingResults.getResultMap().get(methodIdentifier);
+
+        highlightsByMethod.put(method, new MethodHighlight(
+                method,
+                methodIdentifier,
+                getTextAttributes(profilingResults, methodResult),
+                planLines(profilingResults.getLineResultMap().get(methodIdentifier), document)));
+    }
+
+    private List<LineHighlight> planLines(LineValues lineValues, Document document) {
+        if (lineValues == null || document == null)
+            return List.of();
+
+        List<LineHighlight> lineHighlights = new ArrayList<>(lineValues.size());
+        for (int i = 0; i < lineValues.size(); i++) {
+            // JFR line numbers are 1-based
+            lineHighlights.add(new LineHighlight(lineValues.getLine(i) - 1, getLineMarkerColor(profilingResults, lineValues.getValue(i))));
+        }
+        return lineHighlights;
+    }
+
+    boolean isFor(ProcessingMethodResult profilingResults, HotMethodCutoff hotMethodCutoff) {
+        return this.profilingResults == profilingResults && this.hotMethodCutoff.equals(hotMethodCutoff);
+    }
+
+    static String getMethodIdentifier(PsiMethod method) {
+        StringBuilder stringBuilder = new StringBuilder();
+        ClassUtil.formatClassName(method.getContainingClass(), stringBuilder);
+
+        final var methodName = method.isConstructor() ? CONSTRUCTOR_METHOD_NAME : method.getName();
+        final var methodDescriptor = getMethodDescriptor(method);
+
+        return stringBuilder.append('.').append(methodName).append(methodDescriptor).toString();
+    }
+
+    /**
+     * Returns the descriptor of a method, cached on the method for as long as its signature reads the same, since
+     * resolving the types of the descriptor is by far the costliest part of an identifier.
+     */
+    private static String getMethodDescriptor(PsiMethod method) {
+        PsiTypeElement returnTypeElement = method.getReturnTypeElement();
+        String signature = (returnTypeElement != null ? returnTypeElement.getText() : "") + method.getParameterList().getText();
+
+        CachedMethodDescriptor cachedDescriptor = method.getUserData(METHOD_DESCRIPTOR);
+        if (cachedDescriptor != null && cachedDescriptor.signature().equals(signature))
+            return cachedDescriptor.descriptor();
+
+        String descriptor = ClassUtil.getAsmMethodSignature(method);
+        method.putUserData(METHOD_DESCRIPTOR, new CachedMethodDescriptor(signature, descriptor));
+        return descriptor;
+    }
+
+    @SuppressWarnings("UseJBColor")
+    private static TextAttributes getTextAttributes(ProcessingMethodResult profilingResults, Long methodResult) {
+        if (profilingResults instanceof DifferentialResult differentialResult)
+            return getDifferentialTextAttributes(differentialResult, methodResult);
+
+        // Values of a recording span orders of magnitude, which a linear scale would leave all but invisible
+        int alpha = (int) (profilingResults.getIntensity(methodResult) * ALPHA_MAX);
+        Color lightColor = new Color(RED_LIGHT, GREEN_LIGHT, BLUE_LIGHT, alpha);
+        Color darkColor = new Color(RED_DARK, GREEN_DARK, BLUE_DARK, alpha);
+
+        return new TextAttributes(null, new JBColor(lightColor, darkColor), null, null, Font.PLAIN);
+    }
+
+    @SuppressWarnings("UseJBColor")
+    private static TextAttributes getDifferentialTextAttributes(DifferentialResult differentialResult, Long methodResult) {
+        // Intensity follows the size of the change, whichever its direction
+        int alpha = (int) (differentialResult.getIntensity(methodResult) * ALPHA_MAX);
+        // Regressions in red, improvements in green
+        Color lightColor = methodResult > 0 ? new Color(230, 40, 40, alpha) : new Color(40, 170, 70, alpha);
+        Color darkColor = methodResult > 0 ? new Color(230, 70, 70, alpha) : new Color(70, 190, 100, alpha);
+
+        return new TextAttributes(null, new JBColor(lightColor, darkColor), null, null, Font.PLAIN);
+    }
+
+    @SuppressWarnings("UseJBColor")
+    private static JBColor getLineMarkerColor(ProcessingMethodResult profilingResults, long lineResult) {
+        // Lines are only compared with lines, and even the coolest one stays visible next to the method highlight
+        double relativePosition = (double) lineResult / profilingResults.getMaxLineValue();
+
+        int alpha = LINE_MARKER_ALPHA_MIN + (int) (relativePosition * (255 - LINE_MARKER_ALPHA_MIN));
+        return new JBColor(new Color(RED_LIGHT, GREEN_LIGHT, BLUE_LIGHT, alpha), new Color(RED_DARK, GREEN_DARK, BLUE_DARK, alpha));
+    }
+
+    /**
+     * The highlight of a method, placed wherever the method is by the time it is applied. A method that is planned again
+     * gets a new instance, which tells editors to replace its highlighters. Highlights of different plans are equal when
+     * they look the same, so that editors keep the highlighters of methods that new results left unchanged.
+     */
+    record MethodHighlight(PsiMethod method, String methodIdentifier, TextAttributes attributes, List<LineHighlight> lineHighlights) {
+    }
+
+    /**
+     * The gutter marker of a 0-based line of the recorded source, which is only shown while that line is within its
+     * method. Lines outside of the method mean that the source has changed since the recording was made.
+     */
+    record LineHighlight(int line, JBColor color) {
+
+        LineMarkerRenderer getRenderer() {
+            return (editor, graphics, rectangle) -> {
+                graphics.setColor(color);
+                graphics.fillRect(rectangle.x, rectangle.y, LINE_MARKER_WIDTH, rectangle.height);
+            };
+        }
+    }
+
+    private record CachedMethodDescriptor(String signature, String descriptor) {
+    }
+}
@@ -0,0 +1,102 @@
+package io.github.robertomahl.visualjavaprofiler.action;
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.sun.tools.attach.VirtualMachine;
+import com.sun.tools.attach.VirtualMachineDescriptor;
+import io.github.robertomahl.visualjavaprofiler.service.JFRProcessingService;
+import java.nio.file.Path;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+public class LiveProfilingAction extends AnAction {
+
+    @Override
+    public void update(AnActionEvent e) {
+        Project project = e.getProject();
+
+        e.getPresentation().setEnabled(project != null && !DumbService.isDumb(project));
+        e.getPresentation().setText(project != null && project.getService(JFRProcessingService.class).isLiveProfiling()
+                ? "Stop Live Profiling"
+                : "Start Live Profiling");
+    }
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) return;
+
+        JFRProcessingService jfrProcessingService = project.getService(JFRProcessingService.class);
+        if (jfrProcessingService.isLiveProfiling()) {
+            jfrProcessingService.stopLiveProfiling();
+            return;
+        }
+
+        // Listing JVMs reads the attach files of every local process, which is too slow for the UI thread
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Listing JVMs", true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                String currentProcessId = String.valueOf(ProcessHandle.current().pid());
+                List<VirtualMachineDescriptor> virtualMachines = VirtualMachine.list().stream()
+                        .filter(virtualMachine -> !virtualMachine.id().equals(currentProcessId))
+                        .toList();
+                indicator.checkCanceled();
+
+                ApplicationManager.getApplication().invokeLater(() -> selectAndAttach(project, virtualMachines), project.getDisposed());
+            }
+        });
+    }
+
+    private void selectAndAttach(Project project, List<VirtualMachineDescriptor> virtualMachines) {
+        if (virtualMachines.isEmpty()) {
+            Messages.showInfoMessage(project, "No running local JVM was found.", "Live Profiling");
+            return;
+        }
+
+        String[] options = virtualMachines.stream()
+                .map(virtualMachine -> virtualMachine.id() + " " + virtualMachine.displayName())
+                .toArray(String[]::new);
+        int selected = Messages.showChooseDialog(project, "Select the JVM to profile:", "Live Profiling",
+                Messages.getQuestionIcon(), options, options[0]);
+        if (selected < 0)
+            return;
+
+        JFRProcessingService jfrProcessingService = project.getService(JFRProcessingService.class);
+        VirtualMachineDescriptor virtualMachine = virtualMachines.get(selected);
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Attaching to JVM", false) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                try {
+                    Path repository = jfrProcessingService.findJfrRepository(virtualMachine.id());
+                    if (repository == null) {
+                        ApplicationManager.getApplication().invokeLater(() -> {
+                            Messages.showWarningDialog(project, "Flight Recorder is not running in the selected JVM. "
+                                    + "Start it with -XX:StartFlightRecording or 'jcmd <pid> JFR.start'.", "Error");
+                        });
+                        return;
+                    }
+
+                    jfrProcessingService.startLiveProfiling(repository);
+                } catch (Exception ex) {
+                    ApplicationManager.getApplication().invokeLater(() -> {
+                        Messages.showErrorDialog(project, "Could not attach to the selected JVM: " + ex.getMessage(), "Error");
+                    });
+                }
+            }
+        });
+    }
+
+}
@@ -0,0 +1,22 @@
+package io.github.robertomahl.visualjavaprofiler.action;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import io.github.robertomahl.visualjavaprofiler.service.ProfilingResultsListener;
+
+/**
+ * Re-applies the visualization whenever the profiling results of the project are replaced in the background.
+ */
+public class ProfilingResultsRefresher implements ProfilingResultsListener {
+
+    private final Project project;
+
+    public ProfilingResultsRefresher(Project project) {
+        this.project = project;
+    }
+
+    @Override
+    public void profilingResultsChanged() {
+        ApplicationManager.getApplication().invokeLater(() -> new ToggleVisualizationAction().refresh(project), project.getDisposed());
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.robertomahl.visualjavaprofiler.action;
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.InputValidator;
+import com.intellij.openapi.ui.Messages;
+import io.github.robertomahl.visualjavaprofiler.service.HotMethodCutoff;
+import io.github.robertomahl.visualjavaprofiler.service.JFRProcessingService;
+import org.jetbrains.annotations.NotNull;
+
+public class SelectHotMethodCutoffAction extends AnAction {
+
+    @Override
+    public void update(AnActionEvent e) {
+        e.getPresentation().setEnabled(e.getProject() != null);
+    }
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) return;
+
+        JFRProcessingService jfrProcessingService = project.getService(JFRProcessingService.class);
+
+        String input = Messages.showInputDialog(project,
+                "Number of hottest methods to highlight, such as 50, or their share of all methods with values, such as 5%. "
+                        + "Leave empty to highlight every method.",
+                "Highlight Cutoff", Messages.getQuestionIcon(), jfrProcessingService.getHotMethodCutoff().toString(), new InputValidator() {
+                    @Override
+                    public boolean checkInput(String inputString) {
+                        return parseHotMethodCutoff(inputString) != null;
+                    }
+
+                    @Override
+                    public boolean canClose(String inputString) {
+                        return checkInput(inputString);
+                    }
+                });
+        if (input == null)
+            return;
+
+        jfrProcessingService.setHotMethodCutoff(parseHotMethodCutoff(input));
+        new ToggleVisualizationAction().refresh(project);
+    }
+
+    private static HotMethodCutoff parseHotMethodCutoff(String input) {
+        try {
+            return HotMethodCutoff.parse(input);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+}
@@ -3,14 +3,18 @@ package io.github.robertomahl.visualjavaprofiler.action;
 import com.intellij.openapi.actionSystem.ActionUpdateThread;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
-import org.apache.commons.lang3.NotImplementedException;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import io.github.robertomahl.visualjavaprofiler.service.JFRProcessingService;
+import io.github.robertomahl.visualjavaprofiler.service.ProfilingMetric;
+import java.util.Arrays;
 import org.jetbrains.annotations.NotNull;
 
 public class SelectProfilingMetricAction extends AnAction {
 
     @Override
     public void update(AnActionEvent e) {
-        e.getPresentation().setEnabled(false);
+        e.getPresentation().setEnabled(e.getProject() != null);
     }
 
     @Override
@@ -20,7 +24,23 @@ public class SelectProfilingMetricAction extends AnAction {
 
     @Override
     public void actionPerformed(@NotNull AnActionEvent e) {
-        throw new NotImplementedException("Not implemented yet");
+        Project project = e.getProject();
+        if (project == null) return;
+
+        JFRProcessingService jfrProcessingService = project.getService(JFRProcessingService.class);
+
+        ProfilingMetric[] profilingMetrics = ProfilingMetric.values();
+        String[] options = Arrays.stream(profilingMetrics)
+                .map(ProfilingMetric::getDisplayName)
+                .toArray(String[]::new);
+
+        int selected = Messages.showChooseDialog(project, "Select the metric to visualize:", "Profiling Metric",
+                Messages.getQuestionIcon(), options, jfrProcessingService.getActiveProfilingMetric().getDisplayName());
+        if (selected < 0)
+            return;
+
+        jfrProcessingService.setActiveProfilingMetric(profilingMetrics[selected]);
+        new ToggleVisualizationAction().refresh(project);
     }
 
 }
@@ -13,12 +13,16 @@ import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.InputValidator;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.vfs.VirtualFile;
 import io.github.robertomahl.visualjavaprofiler.service.JFRProcessingService;
+import io.github.robertomahl.visualjavaprofiler.service.WeightedRecording;
 import java.io.IOException;
 import java.nio.file.Path;
-import jdk.jfr.consumer.RecordingFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 
 public class SelectProfilingResultAction extends AnAction {
@@ -43,34 +47,67 @@ public class SelectProfilingResultAction extends AnAction {
         Project project = e.getProject();
         if (project == null) return;
 
-        FileChooserDescriptor descriptor = new FileChooserDescriptor(true, false, false, false, false, false)
-                .withTitle("Select JFR File")
-                .withDescription("Choose a Java Flight Recorder (JFR) file.");
+        FileChooserDescriptor descriptor = new FileChooserDescriptor(true, false, false, false, false, true)
+                .withTitle("Select JFR Files")
+                .withDescription("Choose Java Flight Recorder (JFR) files, such as one per node of a service, to merge into a single result, "
+                        + "or a result file aggregated outside of the IDE.");
 
-        VirtualFile file = FileChooser.chooseFile(descriptor, project, null);
-        if (file == null)
+        VirtualFile[] files = FileChooser.chooseFiles(descriptor, project, null);
+        if (files.length == 0)
             return;
 
-        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Processing JFR File", false) {
+        List<Path> recordings = Arrays.stream(files).map(file -> Path.of(file.getPath())).toList();
+        List<WeightedRecording> weightedRecordings = recordings.size() == 1
+                ? List.of(WeightedRecording.of(recordings.get(0)))
+                : selectWeights(project, recordings);
+        if (weightedRecordings == null)
+            return;
+
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Processing JFR Files", true) {
             @Override
             public void run(@NotNull ProgressIndicator indicator) {
-                try (RecordingFile recordingFile = new RecordingFile(Path.of(file.getPath()))) {
+                try {
                     JFRProcessingService jfrProcessingService = project.getService(JFRProcessingService.class);
 
-                    jfrProcessingService.read(recordingFile);
+                    indicator.setIndeterminate(false);
+                    indicator.setText(files.length == 1 ? "Reading " + files[0].getName() : "Merging " + files.length + " recordings");
+                    jfrProcessingService.read(weightedRecordings, indicator);
 
-                    ApplicationManager.getApplication().invokeLater(() -> {
-                        ToggleVisualizationAction toggleVisualizationAction = new ToggleVisualizationAction();
-                        toggleVisualizationAction.stop(project);
-                        toggleVisualizationAction.start(project);
-                    });
+                    ApplicationManager.getApplication().invokeLater(() -> new ToggleVisualizationAction().show(project));
                 } catch (IOException ex) {
                     ApplicationManager.getApplication().invokeLater(() -> {
-                        Messages.showErrorDialog(project, "Invalid file. Please select a valid JFR file.", "Error");
+                        Messages.showErrorDialog(project, "Invalid file. Please select valid JFR files. " + ex.getMessage(), "Error");
                     });
                 }
             }
         });
     }
 
+    private List<WeightedRecording> selectWeights(Project project, List<Path> recordings) {
+        String input = Messages.showInputDialog(project,
+                "Weights of the recordings, separated by commas in the order below, e.g. by the share of traffic of each node. "
+                        + "Leave blank to weigh them equally.\n" + recordings.stream().map(recording -> recording.getFileName().toString())
+                        .collect(Collectors.joining(", ")),
+                "Merge Recordings", Messages.getQuestionIcon(), "", new InputValidator() {
+                    @Override
+                    public boolean checkInput(String inputString) {
+                        return parseWeights(recordings, inputString) != null;
+                    }
+
+                    @Override
+                    public boolean canClose(String inputString) {
+                        return checkInput(inputString);
+                    }
+                });
+        return input == null ? null : parseWeights(recordings, input);
+    }
+
+    private static List<WeightedRecording> parseWeights(List<Path> recordings, String input) {
+        try {
+            return WeightedRecording.withWeights(recordings, input);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
 }
@@ -0,0 +1,110 @@
+package io.github.robertomahl.visualjavaprofiler.action;
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import io.github.robertomahl.visualjavaprofiler.service.JFRProcessingService;
+import io.github.robertomahl.visualjavaprofiler.service.ThreadFilter;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import org.jetbrains.annotations.NotNull;
+
+public class SelectThreadFilterAction extends AnAction {
+
+    // Listing every thread group would not fit in a dialog for recordings of large servers
+    private static final int MAX_LISTED_THREAD_GROUPS = 20;
+
+    @Override
+    public void update(AnActionEvent e) {
+        Project project = e.getProject();
+
+        e.getPresentation().setEnabled(project != null
+                && project.getService(JFRProcessingService.class).canFilterResults()
+                && !DumbService.isDumb(project));
+    }
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) return;
+
+        JFRProcessingService jfrProcessingService = project.getService(JFRProcessingService.class);
+
+        // Results loaded from the cache have no index yet, in which case the recording is read once more
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Indexing JFR File", true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                try {
+                    indicator.setIndeterminate(false);
+                    Set<String> threadNames = jfrProcessingService.getRecordingThreadNames(indicator);
+
+                    ApplicationManager.getApplication().invokeLater(() ->
+                            selectThreadFilter(project, jfrProcessingService, threadNames));
+                } catch (IOException ex) {
+                    showReadError(project);
+                }
+            }
+        });
+    }
+
+    private void selectThreadFilter(Project project, JFRProcessingService jfrProcessingService, Set<String> threadNames) {
+        // Pools are listed once rather than once per thread, but patterns are matched against every thread name
+        Set<String> threadGroups = new TreeSet<>();
+        threadNames.forEach(threadName -> threadGroups.add(ThreadFilter.toThreadGroup(threadName)));
+        String listedThreadGroups = String.join("\n", threadGroups.stream().limit(MAX_LISTED_THREAD_GROUPS).toList());
+        if (threadGroups.size() > MAX_LISTED_THREAD_GROUPS)
+            listedThreadGroups += "\n...";
+
+        ThreadFilter threadFilter = jfrProcessingService.getResultFilter().threadFilter();
+        List<String> unmatchedPatterns;
+        do {
+            String input = Messages.showInputDialog(project,
+                    "Thread name patterns to visualize, separated by commas, such as http-nio-* or worker-1. Leave empty for all threads.\n\n"
+                            + "Thread groups of this recording:\n" + listedThreadGroups,
+                    "Thread Filter", Messages.getQuestionIcon(), threadFilter.toString(), null);
+            if (input == null)
+                return;
+
+            threadFilter = ThreadFilter.parse(input);
+            unmatchedPatterns = threadFilter.getUnmatchedPatterns(threadNames);
+            if (!unmatchedPatterns.isEmpty())
+                Messages.showErrorDialog(project, "No thread of this recording matches " + String.join(", ", unmatchedPatterns) + ".",
+                        "Thread Filter");
+        } while (!unmatchedPatterns.isEmpty());
+
+        ThreadFilter selectedThreadFilter = threadFilter;
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Applying Thread Filter", true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                try {
+                    jfrProcessingService.setResultFilter(jfrProcessingService.getResultFilter().withThreadFilter(selectedThreadFilter), indicator);
+
+                    ApplicationManager.getApplication().invokeLater(() -> new ToggleVisualizationAction().refresh(project));
+                } catch (IOException ex) {
+                    showReadError(project);
+                }
+            }
+        });
+    }
+
+    private static void showReadError(Project project) {
+        ApplicationManager.getApplication().invokeLater(() -> {
+            Messages.showErrorDialog(project, "Could not read the profiling result again. Please select it once more.", "Error");
+        });
+    }
+
+}
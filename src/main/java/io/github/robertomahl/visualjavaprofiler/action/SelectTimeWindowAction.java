@@ -0,0 +1,128 @@
+package io.github.robertomahl.visualjavaprofiler.action;
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.InputValidator;
+import com.intellij.openapi.ui.Messages;
+import io.github.robertomahl.visualjavaprofiler.service.JFRProcessingService;
+import io.github.robertomahl.visualjavaprofiler.service.TimeWindow;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.jetbrains.annotations.NotNull;
+
+public class SelectTimeWindowAction extends AnAction {
+
+    // Seconds relative to the start of the recording, such as "30-120"
+    private static final Pattern TIME_WINDOW_PATTERN = Pattern.compile("\\s*(\\d+)\\s*-\\s*(\\d+)\\s*");
+
+    @Override
+    public void update(AnActionEvent e) {
+        Project project = e.getProject();
+
+        e.getPresentation().setEnabled(project != null
+                && project.getService(JFRProcessingService.class).canFilterResults()
+                && !DumbService.isDumb(project));
+    }
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) return;
+
+        JFRProcessingService jfrProcessingService = project.getService(JFRProcessingService.class);
+
+        // Results loaded from the cache have no index yet, in which case the recording is read once more
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Indexing JFR File", true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                try {
+                    indicator.setIndeterminate(false);
+                    TimeWindow recordingTimeRange = jfrProcessingService.getRecordingTimeRange(indicator);
+                    if (recordingTimeRange == null) {
+                        ApplicationManager.getApplication().invokeLater(() -> {
+                            Messages.showWarningDialog(project, "The profiling result has no events to filter. ", "Error");
+                        });
+                        return;
+                    }
+
+                    ApplicationManager.getApplication().invokeLater(() ->
+                            selectTimeWindow(project, jfrProcessingService, recordingTimeRange));
+                } catch (IOException ex) {
+                    showReadError(project);
+                }
+            }
+        });
+    }
+
+    private void selectTimeWindow(Project project, JFRProcessingService jfrProcessingService, TimeWindow recordingTimeRange) {
+        long start = recordingTimeRange.startEpochSecond();
+        TimeWindow timeWindow = jfrProcessingService.getResultFilter().timeWindow();
+        String initialValue = timeWindow.equals(TimeWindow.ALL)
+                ? "0-" + recordingTimeRange.getDurationSeconds()
+                : (timeWindow.startEpochSecond() - start) + "-" + (timeWindow.endEpochSecond() - start);
+
+        String input = Messages.showInputDialog(project,
+                "Seconds of the recording to visualize, from 0 to " + recordingTimeRange.getDurationSeconds() + ":",
+                "Time Window", Messages.getQuestionIcon(), initialValue, new InputValidator() {
+                    @Override
+                    public boolean checkInput(String inputString) {
+                        return parseTimeWindow(inputString, start) != null;
+                    }
+
+                    @Override
+                    public boolean canClose(String inputString) {
+                        return checkInput(inputString);
+                    }
+                });
+        if (input == null)
+            return;
+
+        TimeWindow selectedTimeWindow = parseTimeWindow(input, start);
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Applying Time Window", true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                try {
+                    jfrProcessingService.setResultFilter(jfrProcessingService.getResultFilter().withTimeWindow(selectedTimeWindow), indicator);
+
+                    ApplicationManager.getApplication().invokeLater(() -> new ToggleVisualizationAction().refresh(project));
+                } catch (IOException ex) {
+                    showReadError(project);
+                }
+            }
+        });
+    }
+
+    private static TimeWindow parseTimeWindow(String input, long recordingStartEpochSecond) {
+        Matcher matcher = TIME_WINDOW_PATTERN.matcher(input);
+        if (!matcher.matches())
+            return null;
+
+        try {
+            long from = Long.parseLong(matcher.group(1));
+            long to = Long.parseLong(matcher.group(2));
+            return from < to ? new TimeWindow(recordingStartEpochSecond + from, recordingStartEpochSecond + to) : null;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static void showReadError(Project project) {
+        ApplicationManager.getApplication().invokeLater(() -> {
+            Messages.showErrorDialog(project, "Could not read the profiling result again. Please select it once more.", "Error");
+        });
+    }
+
+}
@@ -0,0 +1,45 @@
+package io.github.robertomahl.visualjavaprofiler.action;
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import io.github.robertomahl.visualjavaprofiler.service.ProcessingDiagnostics;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Shows the timings and counters of the plugin for this project, and writes them to the IDE log so that they can be
+ * attached to a bug report.
+ */
+public class ShowDiagnosticsAction extends AnAction {
+
+    private static final Logger LOG = Logger.getInstance(ShowDiagnosticsAction.class);
+
+    @Override
+    public void update(AnActionEvent e) {
+        e.getPresentation().setEnabled(e.getProject() != null);
+    }
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) return;
+
+        ProcessingDiagnostics processingDiagnostics = project.getService(ProcessingDiagnostics.class);
+        String summary = processingDiagnostics.getSummary();
+        LOG.info("Profiler Lens diagnostics:\n" + summary);
+
+        int choice = Messages.showDialog(project, summary + "\n\nThe summary has also been written to the IDE log.",
+                "Profiler Lens Diagnostics", new String[]{"Close", "Reset"}, 0, Messages.getInformationIcon());
+        if (choice == 1)
+            processingDiagnostics.reset();
+    }
+
+}
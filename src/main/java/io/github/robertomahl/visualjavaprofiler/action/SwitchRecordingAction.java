@@ -0,0 +1,74 @@
+package io.github.robertomahl.visualjavaprofiler.action;
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import io.github.robertomahl.visualjavaprofiler.service.JFRProcessingService;
+import io.github.robertomahl.visualjavaprofiler.service.WeightedRecording;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Switches to one of the recordings read before whose results are still held in memory.
+ */
+public class SwitchRecordingAction extends AnAction {
+
+    @Override
+    public void update(AnActionEvent e) {
+        Project project = e.getProject();
+
+        e.getPresentation().setEnabled(project != null
+                && !project.getService(JFRProcessingService.class).getStoredRecordings().isEmpty()
+                && !project.getService(JFRProcessingService.class).isLiveProfiling()
+                && !DumbService.isDumb(project));
+    }
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) return;
+
+        JFRProcessingService jfrProcessingService = project.getService(JFRProcessingService.class);
+        List<Path> recordings = jfrProcessingService.getStoredRecordings();
+        if (recordings.isEmpty())
+            return;
+
+        String[] options = recordings.stream().map(Path::toString).toArray(String[]::new);
+        int selected = Messages.showChooseDialog(project, "Select the recording to visualize:", "Switch Recording",
+                Messages.getQuestionIcon(), options, options[0]);
+        if (selected < 0)
+            return;
+
+        Path recording = recordings.get(selected);
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Switching Recording", true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                try {
+                    // The recording is still fingerprinted, so changes to it since it was stored are picked up
+                    jfrProcessingService.read(List.of(WeightedRecording.of(recording)), indicator);
+
+                    ApplicationManager.getApplication().invokeLater(() -> new ToggleVisualizationAction().show(project));
+                } catch (IOException ex) {
+                    ApplicationManager.getApplication().invokeLater(() -> {
+                        Messages.showErrorDialog(project, "Could not switch to " + recording + ": " + ex.getMessage(), "Error");
+                    });
+                }
+            }
+        });
+    }
+
+}
@@ -1,36 +1,52 @@
 package io.github.robertomahl.visualjavaprofiler.action;
 
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.actionSystem.ActionUpdateThread;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.CommonDataKeys;
-import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.markup.HighlighterLayer;
 import com.intellij.openapi.editor.markup.HighlighterTargetArea;
-import com.intellij.openapi.editor.markup.TextAttributes;
+import com.intellij.openapi.editor.markup.MarkupModel;
+import com.intellij.openapi.editor.markup.RangeHighlighter;
 import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.fileEditor.FileEditorManagerListener;
 import com.intellij.openapi.fileEditor.TextEditor;
 import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiJavaFile;
 import com.intellij.psi.PsiManager;
 import com.intellij.psi.PsiMethod;
-import com.intellij.psi.util.ClassUtil;
+import com.intellij.psi.PsiTreeChangeAdapter;
+import com.intellij.psi.PsiTreeChangeEvent;
 import com.intellij.psi.util.PsiTreeUtil;
-import com.intellij.ui.JBColor;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.messages.MessageBusConnection;
+import io.github.robertomahl.visualjavaprofiler.service.HotMethodCutoff;
 import io.github.robertomahl.visualjavaprofiler.service.JFRProcessingService;
+import io.github.robertomahl.visualjavaprofiler.service.ProcessingDiagnostics;
 import io.github.robertomahl.visualjavaprofiler.service.ProcessingMethodResult;
-import java.awt.Color;
-import java.awt.Font;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import org.jetbrains.annotations.NotNull;
 
 public class ToggleVisualizationAction extends AnAction {
@@ -44,27 +60,15 @@ public class ToggleVisualizationAction extends AnAction {
     //TODO: allow selection of max-intensity of the color (alpha)
 
     //Extras
-    //TODO: add option to only highlight x% most time-consuming methods - configurable
     //TODO: also include the actual execution time in a label, besides color highlighting
     //TODO: highlight most time-consuming files in the project files view as well
     //TODO: see highlights in the scrollbar
     //TODO: collect user interaction data
 
-    private static final int RED_LIGHT = 255;
-    private static final int GREEN_LIGHT = 165;
-    private static final int BLUE_LIGHT = 0;
+    // Files up to this size are planned at once, larger ones only around the visible area of each editor
+    private static final int LAZY_HIGHLIGHTING_MIN_LINES = 1000;
 
-    private static final int RED_DARK = 255;
-    private static final int GREEN_DARK = 140;
-    private static final int BLUE_DARK = 0;
-
-    private static final int ALPHA_MAX = 127;
-
-    private static final String CONSTRUCTOR_METHOD_NAME = "<init>";
-
-    private static boolean isVisible = false;
-
-    private static MessageBusConnection connection = null;
+    private static final Key<EditorHighlights> EDITOR_HIGHLIGHTS = Key.create("ProfilerLens.EditorHighlights");
 
     @Override
     public void update(AnActionEvent e) {
@@ -74,7 +78,7 @@ public class ToggleVisualizationAction extends AnAction {
         e.getPresentation().setEnabled(project != null
                 && editor != null
                 && project.getService(JFRProcessingService.class).isProfilingResultsProcessed()
-                && project.getService(JFRProcessingService.class).getProfilingResults().getMaxValue() > 0
+                && project.getService(JFRProcessingService.class).getProfilingResults().hasValues()
                 && !DumbService.isDumb(project));
     }
 
@@ -87,8 +91,8 @@ public class ToggleVisualizationAction extends AnAction {
     public void actionPerformed(AnActionEvent anActionEvent) {
         final var project = Optional.ofNullable(anActionEvent.getProject()).orElseThrow();
 
-        if (isVisible) {
-            stop(project);
+        if (project.getService(VisualizationState.class).isVisible()) {
+            hide(project, true);
         } else {
             start(project);
         }
@@ -99,15 +103,61 @@ public class ToggleVisualizationAction extends AnAction {
 
         if (profilingResults == null)
             return;
-        registerFileOpenListener(project, profilingResults);
-        applyToAllOpenFiles(project, profilingResults);
-        isVisible = true;
+        final var visualizationState = project.getService(VisualizationState.class);
+        visualizationState.show(profilingResults);
+        registerFileOpenListener(project, visualizationState.getVisualizationDisposable());
+        PsiManager.getInstance(project).addPsiTreeChangeListener(new MethodChangeListener(project),
+                visualizationState.getVisualizationDisposable());
+        applyToAllOpenFiles(project);
+    }
+
+    /**
+     * Re-applies the visualization with the latest results, without warning about missing data since it is meant to
+     * be called repeatedly in the background. While the visualization is on, highlights are re-planned in place, so
+     * that only the highlighters of methods whose highlight changed are replaced.
+     */
+    public void refresh(Project project) {
+        final var jfrProcessingService = project.getService(JFRProcessingService.class);
+        final var visualizationState = project.getService(VisualizationState.class);
+
+        if (visualizationState.isHiddenByUser())
+            return;
+
+        if (!jfrProcessingService.isProfilingResultsProcessed() || !jfrProcessingService.getProfilingResults().hasValues()) {
+            stop(project);
+        } else if (!visualizationState.isVisible()) {
+            start(project);
+        } else {
+            visualizationState.setProfilingResults(jfrProcessingService.getProfilingResults());
+            applyToAllOpenFiles(project);
+        }
+    }
+
+    /**
+     * Shows results the user has just picked, even if they had turned the visualization off, and warns if they are
+     * missing data. While the visualization is on, highlights are re-planned in place as in {@link #refresh(Project)}.
+     */
+    public void show(Project project) {
+        final var jfrProcessingService = project.getService(JFRProcessingService.class);
+
+        if (project.getService(VisualizationState.class).isVisible()
+                && jfrProcessingService.isProfilingResultsProcessed()
+                && jfrProcessingService.getProfilingResults().hasValues()) {
+            refresh(project);
+        } else {
+            stop(project);
+            start(project);
+        }
     }
 
     public void stop(Project project) {
-        unregisterFileOpenListener();
+        hide(project, false);
+    }
+
+    private void hide(Project project, boolean byUser) {
+        // Disposing the visualization also disconnects its listeners
+        project.getService(VisualizationState.class).hide(byUser);
         removeFromAllOpenFiles(project);
-        isVisible = false;
     }
 
     private ProcessingMethodResult getProfilingResults(Project project) {
@@ -120,7 +170,7 @@ public class ToggleVisualizationAction extends AnAction {
 
         final var profilingResults = jfrProcessingService.getProfilingResults();
 
-        if (profilingResults.getMaxValue() == 0) {
+        if (!profilingResults.hasValues()) {
             Messages.showWarningDialog(project, "Profiling results have no data for this project. ", "Error");
             return null;
         }
@@ -128,49 +178,163 @@ public class ToggleVisualizationAction extends AnAction {
         return profilingResults;
     }
 
-    private void registerFileOpenListener(Project project, ProcessingMethodResult profilingResults) {
-        if (connection != null)
-            return;
-
-        connection = project.getMessageBus().connect();
+    private void registerFileOpenListener(Project project, Disposable parentDisposable) {
+        MessageBusConnection connection = project.getMessageBus().connect(parentDisposable);
         connection.subscribe(FileEditorManagerListener.FILE_EDITOR_MANAGER, new FileEditorManagerListener() {
             @Override
             public void fileOpened(@NotNull FileEditorManager source, @NotNull VirtualFile file) {
-                applyToFile(project, file, profilingResults);
+                applyToFile(project, file);
             }
         });
     }
 
-    private void applyToAllOpenFiles(Project project, ProcessingMethodResult profilingResults) {
+    private void applyToAllOpenFiles(Project project) {
         FileEditorManager fileEditorManager = FileEditorManager.getInstance(project);
 
         VirtualFile[] openFiles = fileEditorManager.getOpenFiles();
         for (VirtualFile virtualFile : openFiles) {
-            applyToFile(project, virtualFile, profilingResults);
+            applyToFile(project, virtualFile);
         }
     }
 
-    private void applyToFile(Project project, VirtualFile virtualFile, ProcessingMethodResult profilingResults) {
-        ApplicationManager.getApplication().executeOnPooledThread(() -> {
-            PsiFile psiFile = ReadAction.nonBlocking(() -> PsiManager.getInstance(project).findFile(virtualFile))
-                    .inSmartMode(project)
-                    .executeSynchronously();
+    private void applyToFile(Project project, VirtualFile virtualFile) {
+        for (Editor editor : getEditors(project, virtualFile)) {
+            if (editor.getUserData(EDITOR_HIGHLIGHTS) == null) {
+                editor.putUserData(EDITOR_HIGHLIGHTS, new EditorHighlights());
+                editor.getScrollingModel().addVisibleAreaListener(
+                        event -> highlightVisibleArea(project, virtualFile, editor),
+                        project.getService(VisualizationState.class).getVisualizationDisposable());
+            }
+            highlightVisibleArea(project, virtualFile, editor);
+        }
+    }
 
-            if (psiFile instanceof PsiJavaFile && psiFile.isValid()) {
-                List<Editor> editors = getEditors(project, virtualFile);
+    private void highlightVisibleArea(Project project, VirtualFile virtualFile, Editor editor) {
+        ProcessingMethodResult profilingResults = project.getService(VisualizationState.class).getProfilingResults();
+        if (profilingResults == null)
+            return;
 
-                if (!editors.isEmpty())
-                    applyToAllFileMethods(project, (PsiJavaFile) psiFile, editors, profilingResults);
-            }
-        });
+        TextRange highlightRange = getHighlightRange(editor);
+        long requestNanos = System.nanoTime();
+
+        ReadAction.nonBlocking(() -> planHighlights(project, virtualFile, profilingResults, highlightRange))
+                .inSmartMode(project)
+                .withDocumentsCommitted(project)
+                .coalesceBy(editor, EDITOR_HIGHLIGHTS)
+                .expireWith(project.getService(VisualizationState.class).getVisualizationDisposable())
+                .finishOnUiThread(ModalityState.any(), plannedHighlights -> applyHighlights(project, editor, plannedHighlights, requestNanos))
+                .submit(AppExecutorUtil.getAppExecutorService());
+    }
+
+    private TextRange getHighlightRange(Editor editor) {
+        Document document = editor.getDocument();
+        if (document.getLineCount() <= LAZY_HIGHLIGHTING_MIN_LINES)
+            return new TextRange(0, document.getTextLength());
+
+        Rectangle visibleArea = editor.getScrollingModel().getVisibleArea();
+        int firstVisibleLine = editor.xyToLogicalPosition(new Point(0, visibleArea.y)).line;
+        int lastVisibleLine = editor.xyToLogicalPosition(new Point(0, visibleArea.y + visibleArea.height)).line;
+
+        // One viewport of margin on each side, so that highlights are in place before they scroll into view
+        int margin = lastVisibleLine - firstVisibleLine + 1;
+        int firstLine = Math.max(0, firstVisibleLine - margin);
+        int lastLine = Math.min(document.getLineCount() - 1, lastVisibleLine + margin);
+
+        return new TextRange(document.getLineStartOffset(firstLine), document.getLineEndOffset(lastLine));
     }
 
-    private void unregisterFileOpenListener() {
-        if (connection == null)
+    private PlannedHighlights planHighlights(Project project, VirtualFile virtualFile, ProcessingMethodResult profilingResults, TextRange highlightRange) {
+        PsiFile psiFile = PsiManager.getInstance(project).findFile(virtualFile);
+        if (!(psiFile instanceof PsiJavaFile psiJavaFile) || !psiFile.isValid())
+            return null;
+
+        HotMethodCutoff hotMethodCutoff = project.getService(JFRProcessingService.class).getHotMethodCutoff();
+        Map<VirtualFile, HighlightPlan> highlightPlans = project.getService(VisualizationState.class).getHighlightPlans();
+        HighlightPlan highlightPlan = highlightPlans.get(virtualFile);
+        if (highlightPlan == null || !highlightPlan.isFor(profilingResults, hotMethodCutoff)) {
+            highlightPlan = new HighlightPlan(profilingResults, hotMethodCutoff);
+            highlightPlans.put(virtualFile, highlightPlan);
+        }
+
+        Document document = PsiDocumentManager.getInstance(project).getDocument(psiJavaFile);
+        return new PlannedHighlights(highlightPlan,
+                highlightPlan.plan(psiJavaFile, document, highlightRange.getStartOffset(), highlightRange.getEndOffset()));
+    }
+
+    private void applyHighlights(Project project, Editor editor, PlannedHighlights plannedHighlights, long requestNanos) {
+        EditorHighlights editorHighlights = editor.getUserData(EDITOR_HIGHLIGHTS);
+        if (plannedHighlights == null || editorHighlights == null || editor.isDisposed())
             return;
 
-        connection.disconnect();
-        connection = null;
+        long startNanos = System.nanoTime();
+        int added = 0;
+        int removed = 0;
+
+        MarkupModel markupModel = editor.getMarkupModel();
+        // Highlights of another plan, such as one of the previous live snapshot, are kept where they look the same
+        boolean isSamePlan = editorHighlights.highlightPlan == plannedHighlights.highlightPlan();
+        editorHighlights.highlightPlan = plannedHighlights.highlightPlan();
+
+        // Highlighters follow the edits of the document by themselves, so only methods planned again are replaced
+        Set<PsiMethod> plannedMethods = new HashSet<>();
+        for (HighlightPlan.MethodHighlight highlight : plannedHighlights.highlights()) {
+            plannedMethods.add(highlight.method());
+
+            AppliedHighlight appliedHighlight = editorHighlights.appliedHighlights.get(highlight.method());
+            if (appliedHighlight != null && appliedHighlight.highlight() == highlight)
+                continue;
+            if (appliedHighlight != null && !isSamePlan && appliedHighlight.highlight().equals(highlight)) {
+                editorHighlights.appliedHighlights.put(highlight.method(), new AppliedHighlight(highlight, appliedHighlight.highlighters()));
+                continue;
+            }
+
+            if (appliedHighlight != null)
+                removed += appliedHighlight.remove(markupModel);
+            AppliedHighlight addedHighlight = addHighlighters(editor, highlight);
+            added += addedHighlight.highlighters().size();
+            editorHighlights.appliedHighlights.put(highlight.method(), addedHighlight);
+        }
+        Iterator<AppliedHighlight> appliedHighlights = editorHighlights.appliedHighlights.values().iterator();
+        while (appliedHighlights.hasNext()) {
+            AppliedHighlight appliedHighlight = appliedHighlights.next();
+            if (!plannedMethods.contains(appliedHighlight.highlight().method())) {
+                removed += appliedHighlight.remove(markupModel);
+                appliedHighlights.remove();
+            }
+        }
+
+        project.getService(ProcessingDiagnostics.class).recordHighlightBatch(added, removed, startNanos - requestNanos,
+                System.nanoTime() - startNanos);
+    }
+
+    private AppliedHighlight addHighlighters(Editor editor, HighlightPlan.MethodHighlight highlight) {
+        PsiMethod method = highlight.method();
+        if (!method.isValid())
+            return new AppliedHighlight(highlight, List.of());
+
+        MarkupModel markupModel = editor.getMarkupModel();
+        Document document = editor.getDocument();
+        int startOffset = method.getTextRange().getStartOffset();
+        int endOffset = method.getTextRange().getEndOffset();
+
+        List<RangeHighlighter> highlighters = new ArrayList<>(highlight.lineHighlights().size() + 1);
+        highlighters.add(markupModel.addRangeHighlighter(startOffset, endOffset, HighlighterLayer.LAST,
+                highlight.attributes(), HighlighterTargetArea.EXACT_RANGE));
+        for (HighlightPlan.LineHighlight lineHighlight : highlight.lineHighlights()) {
+            if (lineHighlight.line() >= document.getLineCount())
+                break;
+
+            int lineStartOffset = document.getLineStartOffset(lineHighlight.line());
+            int lineEndOffset = document.getLineEndOffset(lineHighlight.line());
+            if (lineEndOffset <= startOffset || lineStartOffset >= endOffset)
+                continue;
+
+            RangeHighlighter lineHighlighter = markupModel.addRangeHighlighter(lineStartOffset, lineEndOffset,
+                    HighlighterLayer.LAST, null, HighlighterTargetArea.LINES_IN_RANGE);
+            lineHighlighter.setLineMarkerRenderer(lineHighlight.getRenderer());
+            highlighters.add(lineHighlighter);
+        }
+        return new AppliedHighlight(highlight, highlighters);
     }
 
     private void removeFromAllOpenFiles(Project project) {
@@ -185,8 +349,10 @@ public class ToggleVisualizationAction extends AnAction {
     private void removeFromFile(Project project, VirtualFile virtualFile) {
         List<Editor> editors = getEditors(project, virtualFile);
 
-        if (!editors.isEmpty())
-            editors.forEach(editor -> editor.getMarkupModel().removeAllHighlighters());
+        editors.forEach(editor -> {
+            editor.getMarkupModel().removeAllHighlighters();
+            editor.putUserData(EDITOR_HIGHLIGHTS, null);
+        });
     }
 
     private List<Editor> getEditors(Project project, VirtualFile virtualFile) {
@@ -199,70 +365,83 @@ public class ToggleVisualizationAction extends AnAction {
                 .toList();
     }
 
-    private void applyToAllFileMethods(Project project, PsiJavaFile psiFile, List<Editor> editors, ProcessingMethodResult profilingResults) {
-        List<PsiMethod> psiFileMethods = ReadAction.nonBlocking(() ->
-                        PsiTreeUtil.findChildrenOfType(psiFile, PsiMethod.class).stream()
-                                .filter(psiMethod -> psiMethod.getContainingClass() != null)
-                                .toList())
-                .inSmartMode(project)
-                .executeSynchronously();
+    private record PlannedHighlights(HighlightPlan highlightPlan, List<HighlightPlan.MethodHighlight> highlights) {
+    }
 
-        for (PsiMethod method : psiFileMethods) {
-            editors.forEach(editor -> highlightMethod(project, method, editor, profilingResults));
+    private record AppliedHighlight(HighlightPlan.MethodHighlight highlight, List<RangeHighlighter> highlighters) {
+
+        /**
+         * Removes the highlighters, returning how many there were.
+         */
+        int remove(MarkupModel markupModel) {
+            for (RangeHighlighter highlighter : highlighters) {
+                markupModel.removeHighlighter(highlighter);
+            }
+            return highlighters.size();
         }
     }
 
-    private void highlightMethod(Project project, PsiMethod method, Editor editor, ProcessingMethodResult profilingResults) {
-        final var methodIdentifier = getMethodIdentifier(project, method);
-        final var methodResult = profilingResults.getResultMap().get(methodIdentifier);
-        if (methodResult == null)
-            return;
+    private static final class EditorHighlights {
 
-        TextAttributes attributes = getTextAttributes(profilingResults, methodResult);
+        private HighlightPlan highlightPlan;
+        private final Map<PsiMethod, AppliedHighlight> appliedHighlights = new HashMap<>();
+    }
 
-        int startOffset = method.getTextRange().getStartOffset();
-        int endOffset = method.getTextRange().getEndOffset();
+    /**
+     * Re-plans the methods that edits happen in, and re-walks the rest of the file after each edit for methods that
+     * came, went or were renamed, without touching the highlights of any other method.
+     */
+    private class MethodChangeListener extends PsiTreeChangeAdapter {
 
-        ApplicationManager.getApplication().invokeLater(() -> {
-            editor.getMarkupModel().addRangeHighlighter(startOffset, endOffset, HighlighterLayer.LAST, attributes, HighlighterTargetArea.EXACT_RANGE);
-        });
-    }
+        private final Project project;
 
-    private String getMethodIdentifier(Project project, PsiMethod method) {
-        final var className = ReadAction.nonBlocking(() ->
-                        Optional.ofNullable(method.getContainingClass())
-                                .map(psiClass -> {
-                                    StringBuilder stringBuilder = new StringBuilder();
-                                    ClassUtil.formatClassName(psiClass, stringBuilder);
-                                    return stringBuilder.toString();
-                                })
-                                .orElseThrow())
-                .inSmartMode(project)
-                .executeSynchronously();
+        MethodChangeListener(Project project) {
+            this.project = project;
+        }
 
-        final var methodName = ReadAction.nonBlocking(() -> method.isConstructor() ? CONSTRUCTOR_METHOD_NAME : method.getName())
-                .inSmartMode(project)
-                .executeSynchronously();
-        final var methodDescriptor = ReadAction.nonBlocking(() -> ClassUtil.getAsmMethodSignature(method))
-                .inSmartMode(project)
-                .executeSynchronously();
+        @Override
+        public void childAdded(@NotNull PsiTreeChangeEvent event) {
+            invalidate(event);
+        }
 
-        return className + "." + methodName + methodDescriptor;
-    }
+        @Override
+        public void childRemoved(@NotNull PsiTreeChangeEvent event) {
+            invalidate(event);
+        }
 
-    @SuppressWarnings("UseJBColor")
-    private TextAttributes getTextAttributes(ProcessingMethodResult profilingResults, Long methodResult) {
-        final var minValue = profilingResults.getMaxValue();
-        final var maxValue = profilingResults.getMaxValue();
+        @Override
+        public void childReplaced(@NotNull PsiTreeChangeEvent event) {
+            invalidate(event);
+        }
 
-        // Normalizing the method result to a value between 0 and 1
-        double relativePosition = (double) (methodResult - minValue) / (maxValue - minValue);
+        @Override
+        public void childMoved(@NotNull PsiTreeChangeEvent event) {
+            invalidate(event);
+        }
 
-        int alpha = (int) (relativePosition * ALPHA_MAX);
-        Color lightColor = new Color(RED_LIGHT, GREEN_LIGHT, BLUE_LIGHT, alpha);
-        Color darkColor = new Color(RED_DARK, GREEN_DARK, BLUE_DARK, alpha);
+        @Override
+        public void childrenChanged(@NotNull PsiTreeChangeEvent event) {
+            invalidate(event);
+        }
 
-        return new TextAttributes(null, new JBColor(lightColor, darkColor), null, null, Font.PLAIN);
+        private void invalidate(PsiTreeChangeEvent event) {
+            PsiFile psiFile = event.getFile();
+            PsiElement parent = event.getParent();
+            if (psiFile == null || parent == null || !parent.isValid())
+                return;
+
+            VirtualFile virtualFile = psiFile.getVirtualFile();
+            HighlightPlan highlightPlan = virtualFile != null
+                    ? project.getService(VisualizationState.class).getHighlightPlans().get(virtualFile) : null;
+            if (highlightPlan == null)
+                return;
+
+            highlightPlan.invalidate(PsiTreeUtil.getParentOfType(parent, PsiMethod.class, false), parent.getTextRange().getStartOffset());
+            for (Editor editor : getEditors(project, virtualFile)) {
+                if (editor.getUserData(EDITOR_HIGHLIGHTS) != null)
+                    highlightVisibleArea(project, virtualFile, editor);
+            }
+        }
     }
 
 }
@@ -0,0 +1,82 @@
+package io.github.robertomahl.visualjavaprofiler.action;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.vfs.VirtualFile;
+import io.github.robertomahl.visualjavaprofiler.service.ProcessingMethodResult;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The visualization of a project: whether it is on, the results it shows, the listeners it registered and the highlight
+ * plans of the files of the project. Listeners are disposed with the project at the latest.
+ */
+@Service(Service.Level.PROJECT)
+public final class VisualizationState implements Disposable {
+
+    private boolean visible = false;
+
+    // Read by listeners when they plan highlights, so that new results apply without registering them again
+    private volatile ProcessingMethodResult profilingResults = null;
+
+    // Set when the user turns the visualization off, so that background refreshes do not turn it back on
+    private boolean hiddenByUser = false;
+
+    // Parent of every listener of the visualization, which are removed all at once when it is turned off
+    private Disposable visualizationDisposable = null;
+
+    private final Map<VirtualFile, HighlightPlan> highlightPlans = new ConcurrentHashMap<>();
+
+    public boolean isVisible() {
+        return visible;
+    }
+
+    public boolean isHiddenByUser() {
+        return hiddenByUser;
+    }
+
+    ProcessingMethodResult getProfilingResults() {
+        return profilingResults;
+    }
+
+    void show(ProcessingMethodResult profilingResults) {
+        this.profilingResults = profilingResults;
+        visualizationDisposable = Disposer.newDisposable(this, "Profiler Lens visualization");
+        visible = true;
+        hiddenByUser = false;
+    }
+
+    /**
+     * Replaces the results shown, dropping the plans of the previous ones.
+     */
+    void setProfilingResults(ProcessingMethodResult profilingResults) {
+        this.profilingResults = profilingResults;
+        highlightPlans.clear();
+    }
+
+    void hide(boolean byUser) {
+        if (visualizationDisposable != null) {
+            Disposer.dispose(visualizationDisposable);
+            visualizationDisposable = null;
+        }
+        // Plans are only kept up to date with edits while the visualization is on
+        highlightPlans.clear();
+        profilingResults = null;
+        visible = false;
+        hiddenByUser |= byUser;
+    }
+
+    Disposable getVisualizationDisposable() {
+        return visualizationDisposable;
+    }
+
+    Map<VirtualFile, HighlightPlan> getHighlightPlans() {
+        return highlightPlans;
+    }
+
+    @Override
+    public void dispose() {
+        highlightPlans.clear();
+    }
+}
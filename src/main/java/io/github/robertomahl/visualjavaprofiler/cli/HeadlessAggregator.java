@@ -0,0 +1,122 @@
+package io.github.robertomahl.visualjavaprofiler.cli;
+
+import io.github.robertomahl.visualjavaprofiler.service.ProcessingMethodResult;
+import io.github.robertomahl.visualjavaprofiler.service.ProcessingResultFile;
+import io.github.robertomahl.visualjavaprofiler.service.ProfilingMetric;
+import io.github.robertomahl.visualjavaprofiler.service.RecordingAggregator;
+import io.github.robertomahl.visualjavaprofiler.service.WeightedRecording;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Command-line entry point that aggregates recordings into a result file, which the plugin opens like a recording.
+ * <p>
+ * Outside of the IDE there is no PSI to tell project classes apart, so scope is given either as package prefixes or
+ * as directories of compiled classes.
+ */
+public final class HeadlessAggregator {
+
+    private static final String USAGE = """
+            Usage: HeadlessAggregator (--scope-package <prefix> | --scope-classes <directory>)... [--weights <weights>] --output <file> <recording.jfr>...
+              --scope-package <prefix>     Counts classes of the package and its subpackages as project code
+              --scope-classes <directory>  Counts the classes compiled into the directory as project code
+              --weights <weights>          Scales the recordings by weights separated by commas, in the same order
+              --output <file>              Result file to write, to be opened with Select Profiling Result""";
+
+    private static final String CLASS_FILE_EXTENSION = ".class";
+
+    private HeadlessAggregator() {
+    }
+
+    public static void main(String[] args) {
+        List<String> packagePrefixes = new ArrayList<>();
+        List<Path> classDirectories = new ArrayList<>();
+        List<Path> recordings = new ArrayList<>();
+        String weights = "";
+        Path output = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--scope-package" -> packagePrefixes.add(getValue(args, ++i));
+                case "--scope-classes" -> classDirectories.add(Path.of(getValue(args, ++i)));
+                case "--weights" -> weights = getValue(args, ++i);
+                case "--output" -> output = Path.of(getValue(args, ++i));
+                default -> recordings.add(Path.of(args[i]));
+            }
+        }
+        if (output == null || recordings.isEmpty() || packagePrefixes.isEmpty() && classDirectories.isEmpty())
+            exitWithUsage();
+
+        List<WeightedRecording> weightedRecordings = null;
+        try {
+            weightedRecordings = WeightedRecording.withWeights(recordings, weights);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            exitWithUsage();
+        }
+
+        try {
+            Predicate<String> isClassInScope = getScope(packagePrefixes, classDirectories);
+            Map<ProfilingMetric, ProcessingMethodResult> resultsPerMetric = RecordingAggregator.aggregateWeighted(weightedRecordings, isClassInScope);
+
+            Path outputDirectory = output.toAbsolutePath().getParent();
+            if (outputDirectory != null)
+                Files.createDirectories(outputDirectory);
+            ProcessingResultFile.write(output.toAbsolutePath(), resultsPerMetric);
+
+            for (Map.Entry<ProfilingMetric, ProcessingMethodResult> entry : resultsPerMetric.entrySet()) {
+                System.out.println(entry.getKey().getDisplayName() + ": " + entry.getValue().getResultMap().size() + " methods");
+            }
+            System.out.println("Wrote " + output);
+        } catch (IOException ex) {
+            System.err.println("Could not aggregate recordings: " + ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static Predicate<String> getScope(List<String> packagePrefixes, List<Path> classDirectories) throws IOException {
+        Set<String> classNames = new HashSet<>();
+        for (Path classDirectory : classDirectories) {
+            classNames.addAll(getClassNames(classDirectory));
+        }
+
+        List<String> packageNamePrefixes = packagePrefixes.stream()
+                .map(prefix -> prefix.endsWith(".") ? prefix : prefix + ".")
+                .toList();
+        return className -> classNames.contains(className) || packageNamePrefixes.stream().anyMatch(className::startsWith);
+    }
+
+    private static Set<String> getClassNames(Path classDirectory) throws IOException {
+        Set<String> classNames = new HashSet<>();
+        try (Stream<Path> files = Files.walk(classDirectory)) {
+            files.filter(file -> file.getFileName().toString().endsWith(CLASS_FILE_EXTENSION))
+                    .forEach(file -> {
+                        // Binary names, with nested classes after a '$', as JFR reports them
+                        String relativePath = classDirectory.relativize(file).toString();
+                        classNames.add(relativePath
+                                .substring(0, relativePath.length() - CLASS_FILE_EXTENSION.length())
+                                .replace(file.getFileSystem().getSeparator(), "."));
+                    });
+        }
+        return classNames;
+    }
+
+    private static String getValue(String[] args, int index) {
+        if (index >= args.length)
+            exitWithUsage();
+        return args[index];
+    }
+
+    private static void exitWithUsage() {
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+}
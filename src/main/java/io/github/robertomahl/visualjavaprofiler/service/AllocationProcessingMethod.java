@@ -0,0 +1,86 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.util.Set;
+import jdk.jfr.consumer.RecordedEvent;
+
+/**
+ * Attributes allocated bytes to methods, weighting each allocation event by the memory it stands for.
+ * <p>
+ * {@code jdk.ObjectAllocationSample} (JDK 16+) is throttled and carries its own weight. Older JDKs only provide the
+ * TLAB events, where a new TLAB accounts for its whole size and an allocation outside of a TLAB for its own size.
+ * Recordings may contain both families, so TLAB events are only used when there are no allocation samples at all,
+ * which would otherwise count the same memory twice.
+ */
+public class AllocationProcessingMethod implements ProfilingMetricProcessingMethod {
+
+    private static final String ALLOCATION_SAMPLE_EVENT = "jdk.ObjectAllocationSample";
+    private static final String ALLOCATION_IN_NEW_TLAB_EVENT = "jdk.ObjectAllocationInNewTLAB";
+    private static final String ALLOCATION_OUTSIDE_TLAB_EVENT = "jdk.ObjectAllocationOutsideTLAB";
+
+    public AllocationProcessingMethod() {
+    }
+
+    @Override
+    public Set<String> getEventTypes() {
+        return Set.of(ALLOCATION_SAMPLE_EVENT, ALLOCATION_IN_NEW_TLAB_EVENT, ALLOCATION_OUTSIDE_TLAB_EVENT);
+    }
+
+    @Override
+    public EventAggregator createAggregator(MethodTable methodTable, boolean partitioned) {
+        return new AllocationAggregator(methodTable, partitioned);
+    }
+
+    private static class AllocationAggregator extends CallTreeAggregator {
+
+        private final CallTree sampledAllocations;
+        private final CallTree tlabAllocations;
+
+        AllocationAggregator(MethodTable methodTable, boolean partitioned) {
+            super(methodTable);
+            this.sampledAllocations = new CallTree(partitioned);
+            this.tlabAllocations = new CallTree(partitioned);
+        }
+
+        @Override
+        public void accept(RecordedEvent event) {
+            switch (event.getEventType().getName()) {
+                case ALLOCATION_SAMPLE_EVENT -> addStack(sampledAllocations, event, event.getLong("weight"));
+                case ALLOCATION_IN_NEW_TLAB_EVENT -> addStack(tlabAllocations, event, event.getLong("tlabSize"));
+                case ALLOCATION_OUTSIDE_TLAB_EVENT -> addStack(tlabAllocations, event, event.getLong("allocationSize"));
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void merge(EventAggregator other, double weight) {
+            AllocationAggregator allocationAggregator = (AllocationAggregator) other;
+            sampledAllocations.merge(allocationAggregator.sampledAllocations, weight);
+            tlabAllocations.merge(allocationAggregator.tlabAllocations, weight);
+        }
+
+        @Override
+        public ProcessingMethodResult getResult(Attribution attribution, MethodScope methodScope, ResultFilter resultFilter) {
+            return getResult(getAllocations(), attribution, methodScope, resultFilter);
+        }
+
+        @Override
+        public TimeWindow getTimeRange() {
+            return getAllocations().getTimeRange();
+        }
+
+        @Override
+        public Set<String> getThreadNames() {
+            return getAllocations().getThreadNames();
+        }
+
+        @Override
+        public long getEstimatedSize() {
+            return sampledAllocations.getEstimatedSize() + tlabAllocations.getEstimatedSize();
+        }
+
+        private CallTree getAllocations() {
+            return sampledAllocations.size() > 1 ? sampledAllocations : tlabAllocations;
+        }
+    }
+}
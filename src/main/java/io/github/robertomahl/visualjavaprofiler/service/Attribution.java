@@ -0,0 +1,15 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+/**
+ * How the weight of a stack is attributed to the methods on it.
+ */
+public enum Attribution {
+    /**
+     * Only the topmost method within the project scope is credited.
+     */
+    SELF,
+    /**
+     * Every distinct method within the project scope is credited once, however often it recurses.
+     */
+    INCLUSIVE
+}
@@ -0,0 +1,70 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.util.Set;
+import jdk.jfr.consumer.RecordedEvent;
+
+/**
+ * Attributes the time threads spent blocked, in nanoseconds, to methods. Covers contended monitor entries, monitor
+ * waits and parking, which execution samples never see since a blocked thread is not running.
+ */
+public class BlockingTimeProcessingMethod implements ProfilingMetricProcessingMethod {
+
+    private static final String MONITOR_ENTER_EVENT = "jdk.JavaMonitorEnter";
+    private static final String MONITOR_WAIT_EVENT = "jdk.JavaMonitorWait";
+    private static final String THREAD_PARK_EVENT = "jdk.ThreadPark";
+
+    public BlockingTimeProcessingMethod() {
+    }
+
+    @Override
+    public Set<String> getEventTypes() {
+        return Set.of(MONITOR_ENTER_EVENT, MONITOR_WAIT_EVENT, THREAD_PARK_EVENT);
+    }
+
+    @Override
+    public EventAggregator createAggregator(MethodTable methodTable, boolean partitioned) {
+        return new BlockingTimeAggregator(methodTable, partitioned);
+    }
+
+    private static class BlockingTimeAggregator extends CallTreeAggregator {
+
+        private final CallTree callTree;
+
+        BlockingTimeAggregator(MethodTable methodTable, boolean partitioned) {
+            super(methodTable);
+            this.callTree = new CallTree(partitioned);
+        }
+
+        @Override
+        public void accept(RecordedEvent event) {
+            long duration = event.getDuration().toNanos();
+            if (duration > 0)
+                addStack(callTree, event, duration);
+        }
+
+        @Override
+        public void merge(EventAggregator other, double weight) {
+            callTree.merge(((BlockingTimeAggregator) other).callTree, weight);
+        }
+
+        @Override
+        public ProcessingMethodResult getResult(Attribution attribution, MethodScope methodScope, ResultFilter resultFilter) {
+            return getResult(callTree, attribution, methodScope, resultFilter);
+        }
+
+        @Override
+        public TimeWindow getTimeRange() {
+            return callTree.getTimeRange();
+        }
+
+        @Override
+        public Set<String> getThreadNames() {
+            return callTree.getThreadNames();
+        }
+
+        @Override
+        public long getEstimatedSize() {
+            return callTree.getEstimatedSize();
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Prefix tree of the stacks of a recording, rooted at the bottom frame, with weights (sample counts, bytes, durations)
+ * attached to the node of the top frame of each stack. Frames are told apart by method and line number, so that
+ * weights can also be attributed to lines. Memory scales with the number of unique stacks rather than the number of
+ * samples, since stacks sharing callers share nodes.
+ * <p>
+ * Nodes are stored in parallel primitive arrays, and children are found through an open-addressing index keyed by
+ * (parent, method, line), so adding a stack allocates nothing once it has been seen. A parent always has a lower index
+ * than its children.
+ * <p>
+ * Weights are also kept sparsely per partition of the recording, that is per second and thread, so that results
+ * can be recomputed for any {@link ResultFilter} without reading the recording again. Partitions are keyed by the
+ * second and an interned thread name ID packed into a long. Trees that follow a running JVM are not partitioned at all,
+ * since their partitions would grow for as long as the JVM runs.
+ */
+public final class CallTree {
+
+    private static final int ROOT = 0;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int[] methodIds = new int[INITIAL_CAPACITY];
+    private int[] lineNumbers = new int[INITIAL_CAPACITY];
+    private int[] parents = new int[INITIAL_CAPACITY];
+    private double[] selfWeights = new double[INITIAL_CAPACITY];
+    private int size = 1;
+
+    // Node index per slot, 0 (the root, which is never a child) marks an empty slot
+    private int[] childSlots = new int[INITIAL_CAPACITY * 2];
+
+    private final boolean partitioned;
+    private final PartitionWeights weightsPerPartition = new PartitionWeights();
+    private final List<String> threadNames = new ArrayList<>();
+    private final Map<String, Integer> threadNameIds = new HashMap<>();
+    // Events of a thread mostly arrive in time order, so the latest thread and partition are kept at hand
+    private String lastThreadName = null;
+    private int lastThreadNameId = -1;
+    private long lastPartition = -1L;
+    private NodeWeights lastPartitionWeights = null;
+
+    public CallTree() {
+        this(true);
+    }
+
+    /**
+     * Creates a tree whose weights can only be had for the whole recording, unless partitioned.
+     */
+    public CallTree(boolean partitioned) {
+        this.partitioned = partitioned;
+        methodIds[ROOT] = -1;
+        parents[ROOT] = -1;
+    }
+
+    /**
+     * Adds a stack of {@link MethodTable} IDs and their line numbers, ordered from the top frame down, recorded at the
+     * given epoch second by the thread of the given name.
+     */
+    public void add(int[] stack, int[] lines, int length, long weight, long epochSecond, String threadName) {
+        int node = ROOT;
+        for (int depth = length - 1; depth >= 0; depth--) {
+            node = getOrAddChild(node, stack[depth], lines[depth]);
+        }
+        selfWeights[node] += weight;
+        if (partitioned)
+            getWeightsOfPartition(epochSecond, getThreadNameId(threadName)).add(node, weight);
+    }
+
+    public void merge(CallTree other) {
+        merge(other, 1.0);
+    }
+
+    /**
+     * Merges another tree with its weights scaled by the given factor. Scaled weights are kept as fractions, so that
+     * stacks of a low weight do not vanish and the weights of partitions still add up to those of the whole tree.
+     */
+    public void merge(CallTree other, double weight) {
+        int[] mappedNodes = new int[other.size];
+        for (int node = 1; node < other.size; node++) {
+            mappedNodes[node] = getOrAddChild(mappedNodes[other.parents[node]], other.methodIds[node], other.lineNumbers[node]);
+            selfWeights[mappedNodes[node]] += other.selfWeights[node] * weight;
+        }
+        if (!partitioned)
+            return;
+
+        int[] mappedThreadNames = new int[other.threadNames.size()];
+        for (int threadNameId = 0; threadNameId < mappedThreadNames.length; threadNameId++) {
+            mappedThreadNames[threadNameId] = getThreadNameId(other.threadNames.get(threadNameId));
+        }
+        other.weightsPerPartition.forEach((partition, nodeWeights) -> nodeWeights.addTo(
+                getWeightsOfPartition(getEpochSecond(partition), mappedThreadNames[getThreadNameId(partition)]), mappedNodes, weight));
+    }
+
+    /**
+     * Attributes the weight of each stack passing the filter to its topmost frame within scope.
+     */
+    public MethodCounters getSelfWeights(MethodScope methodScope, ResultFilter resultFilter) {
+        double[] nodeWeights = getNodeWeights(resultFilter);
+        MethodCounters counters = new MethodCounters();
+        for (int node = 1; node < size; node++) {
+            if (nodeWeights[node] == 0)
+                continue;
+
+            for (int frame = node; frame != ROOT; frame = parents[frame]) {
+                if (methodScope.contains(methodIds[frame])) {
+                    counters.add(methodIds[frame], lineNumbers[frame], nodeWeights[node]);
+                    break;
+                }
+            }
+        }
+        return counters;
+    }
+
+    /**
+     * Attributes the weight of each stack passing the filter to every distinct method within scope on that stack, so
+     * that recursive methods are only counted once per stack, at their innermost line.
+     */
+    public MethodCounters getInclusiveWeights(MethodScope methodScope, ResultFilter resultFilter) {
+        double[] nodeWeights = getNodeWeights(resultFilter);
+        MethodCounters counters = new MethodCounters();
+        // Node index of the stack a method was last counted for, offset by one so that 0 means never
+        int[] lastCountedStack = new int[0];
+
+        for (int node = 1; node < size; node++) {
+            if (nodeWeights[node] == 0)
+                continue;
+
+            for (int frame = node; frame != ROOT; frame = parents[frame]) {
+                int methodId = methodIds[frame];
+                if (!methodScope.contains(methodId))
+                    continue;
+
+                if (methodId >= lastCountedStack.length)
+                    lastCountedStack = Arrays.copyOf(lastCountedStack, Math.max(methodId + 1, lastCountedStack.length * 2));
+                if (lastCountedStack[methodId] == node + 1)
+                    continue;
+
+                lastCountedStack[methodId] = node + 1;
+                counters.add(methodId, lineNumbers[frame], nodeWeights[node]);
+            }
+        }
+        return counters;
+    }
+
+    /**
+     * Returns the weight of all stacks passing the filter, whether or not they have a frame within scope, rounded to
+     * whole units.
+     */
+    public long getTotalWeight(ResultFilter resultFilter) {
+        double totalWeight = 0.0;
+        for (double nodeWeight : getNodeWeights(resultFilter)) {
+            totalWeight += nodeWeight;
+        }
+        return Math.round(totalWeight);
+    }
+
+    /**
+     * Returns the seconds that stacks were recorded at, or null if there are none or the tree is not partitioned.
+     */
+    public TimeWindow getTimeRange() {
+        if (weightsPerPartition.isEmpty())
+            return null;
+
+        long[] range = {Long.MAX_VALUE, Long.MIN_VALUE};
+        weightsPerPartition.forEach((partition, nodeWeights) -> {
+            range[0] = Math.min(range[0], getEpochSecond(partition));
+            range[1] = Math.max(range[1], getEpochSecond(partition));
+        });
+        return new TimeWindow(range[0], range[1] + 1);
+    }
+
+    public Set<String> getThreadNames() {
+        return new TreeSet<>(threadNames);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns roughly how many bytes of heap the tree takes, that is its nodes and the weights of its partitions.
+     */
+    public long getEstimatedSize() {
+        return 20L * methodIds.length + 4L * childSlots.length + weightsPerPartition.getEstimatedSize();
+    }
+
+    private double[] getNodeWeights(ResultFilter resultFilter) {
+        if (resultFilter.isAll())
+            return Arrays.copyOf(selfWeights, size);
+        if (!partitioned)
+            throw new IllegalStateException("Results of a tree without partitions cannot be filtered");
+
+        // Patterns are matched once per thread rather than once per partition
+        boolean[] includedThreads = new boolean[threadNames.size()];
+        for (int threadNameId = 0; threadNameId < includedThreads.length; threadNameId++) {
+            includedThreads[threadNameId] = resultFilter.threadFilter().matches(threadNames.get(threadNameId));
+        }
+
+        double[] nodeWeights = new double[size];
+        weightsPerPartition.forEach((partition, weightsOfPartition) -> {
+            if (includedThreads[getThreadNameId(partition)] && resultFilter.timeWindow().contains(getEpochSecond(partition)))
+                weightsOfPartition.addTo(nodeWeights);
+        });
+        return nodeWeights;
+    }
+
+    private int getThreadNameId(String threadName) {
+        // Aggregators hand over the same instance for every event of a thread
+        if (threadName != lastThreadName) {
+            lastThreadNameId = threadNameIds.computeIfAbsent(threadName, key -> {
+                threadNames.add(key);
+                return threadNames.size() - 1;
+            });
+            lastThreadName = threadName;
+        }
+        return lastThreadNameId;
+    }
+
+    private NodeWeights getWeightsOfPartition(long epochSecond, int threadNameId) {
+        long partition = (epochSecond << 32) | threadNameId;
+        if (partition != lastPartition) {
+            lastPartition = partition;
+            lastPartitionWeights = weightsPerPartition.getOrAdd(partition);
+        }
+        return lastPartitionWeights;
+    }
+
+    private static long getEpochSecond(long partition) {
+        return partition >>> 32;
+    }
+
+    private static int getThreadNameId(long partition) {
+        return (int) partition;
+    }
+
+    private int getOrAddChild(int parent, int methodId, int lineNumber) {
+        int mask = childSlots.length - 1;
+        int slot = hash(parent, methodId, lineNumber) & mask;
+
+        while (childSlots[slot] != ROOT) {
+            int child = childSlots[slot];
+            if (parents[child] == parent && methodIds[child] == methodId && lineNumbers[child] == lineNumber)
+                return child;
+            slot = (slot + 1) & mask;
+        }
+
+        int child = addNode(parent, methodId, lineNumber);
+        childSlots[slot] = child;
+        if (size * 2 > childSlots.length)
+            rehash();
+        return child;
+    }
+
+    private int addNode(int parent, int methodId, int lineNumber) {
+        if (size == methodIds.length) {
+            methodIds = Arrays.copyOf(methodIds, size * 2);
+            lineNumbers = Arrays.copyOf(lineNumbers, size * 2);
+            parents = Arrays.copyOf(parents, size * 2);
+            selfWeights = Arrays.copyOf(selfWeights, size * 2);
+        }
+        methodIds[size] = methodId;
+        lineNumbers[size] = lineNumber;
+        parents[size] = parent;
+        return size++;
+    }
+
+    private void rehash() {
+        childSlots = new int[childSlots.length * 2];
+        int mask = childSlots.length - 1;
+        for (int node = 1; node < size; node++) {
+            int slot = hash(parents[node], methodIds[node], lineNumbers[node]) & mask;
+            while (childSlots[slot] != ROOT) {
+                slot = (slot + 1) & mask;
+            }
+            childSlots[slot] = node;
+        }
+    }
+
+    private static int hash(int parent, int methodId, int lineNumber) {
+        int hash = (parent * 31 + methodId) * 31 + lineNumber;
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Open-addressing map from partition, as an epoch second and a thread name ID packed into a long, to the weights
+     * of that partition.
+     */
+    private static final class PartitionWeights {
+
+        private long[] partitions = new long[16];
+        private NodeWeights[] weights = new NodeWeights[16];
+        private int count = 0;
+
+        NodeWeights getOrAdd(long partition) {
+            int slot = findSlot(partition);
+            if (weights[slot] == null) {
+                partitions[slot] = partition;
+                weights[slot] = new NodeWeights();
+                NodeWeights added = weights[slot];
+                if (++count * 2 > partitions.length)
+                    rehash();
+                return added;
+            }
+            return weights[slot];
+        }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+
+        long getEstimatedSize() {
+            long size = 12L * partitions.length;
+            for (NodeWeights nodeWeights : weights) {
+                if (nodeWeights != null)
+                    size += nodeWeights.getEstimatedSize();
+            }
+            return size;
+        }
+
+        void forEach(PartitionConsumer consumer) {
+            for (int slot = 0; slot < partitions.length; slot++) {
+                if (weights[slot] != null)
+                    consumer.accept(partitions[slot], weights[slot]);
+            }
+        }
+
+        private int findSlot(long partition) {
+            int mask = partitions.length - 1;
+            int slot = Long.hashCode(partition * 0x9E3779B97F4A7C15L) & mask;
+            while (weights[slot] != null && partitions[slot] != partition) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void rehash() {
+            long[] oldPartitions = partitions;
+            NodeWeights[] oldWeights = weights;
+            partitions = new long[oldPartitions.length * 2];
+            weights = new NodeWeights[oldPartitions.length * 2];
+            for (int slot = 0; slot < oldPartitions.length; slot++) {
+                if (oldWeights[slot] != null) {
+                    int newSlot = findSlot(oldPartitions[slot]);
+                    partitions[newSlot] = oldPartitions[slot];
+                    weights[newSlot] = oldWeights[slot];
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface PartitionConsumer {
+
+        void accept(long partition, NodeWeights nodeWeights);
+    }
+
+    /**
+     * Sparse weights of the nodes that stacks ended at, as an open-addressing map from node index to weight.
+     */
+    private static final class NodeWeights {
+
+        private int[] nodes = new int[16];
+        private double[] weights = new double[16];
+        private int count = 0;
+
+        void add(int node, double weight) {
+            int slot = findSlot(node);
+            if (nodes[slot] == ROOT) {
+                nodes[slot] = node;
+                if (++count * 2 > nodes.length) {
+                    rehash();
+                    slot = findSlot(node);
+                }
+            }
+            weights[slot] += weight;
+        }
+
+        long getEstimatedSize() {
+            return 48L + 12L * nodes.length;
+        }
+
+        void addTo(double[] nodeWeights) {
+            for (int slot = 0; slot < nodes.length; slot++) {
+                if (nodes[slot] != ROOT)
+                    nodeWeights[nodes[slot]] += weights[slot];
+            }
+        }
+
+        void addTo(NodeWeights other, int[] mappedNodes, double weight) {
+            for (int slot = 0; slot < nodes.length; slot++) {
+                if (nodes[slot] != ROOT)
+                    other.add(mappedNodes[nodes[slot]], weights[slot] * weight);
+            }
+        }
+
+        private int findSlot(int node) {
+            int mask = nodes.length - 1;
+            int hash = node * 0x9E3779B9;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (nodes[slot] != ROOT && nodes[slot] != node) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void rehash() {
+            int[] oldNodes = nodes;
+            double[] oldWeights = weights;
+            nodes = new int[oldNodes.length * 2];
+            weights = new double[oldNodes.length * 2];
+            for (int slot = 0; slot < oldNodes.length; slot++) {
+                if (oldNodes[slot] != ROOT) {
+                    int newSlot = findSlot(oldNodes[slot]);
+                    nodes[newSlot] = oldNodes[slot];
+                    weights[newSlot] = oldWeights[slot];
+                }
+            }
+        }
+    }
+}
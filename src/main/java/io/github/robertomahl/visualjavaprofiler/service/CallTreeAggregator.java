@@ -0,0 +1,109 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordedThread;
+
+/**
+ * Base for aggregators that fold the stack trace of each event into a {@link CallTree}, weighted by a per-event value.
+ * Project scope is only known once the whole recording has been read, so whole stacks are kept until then.
+ */
+abstract class CallTreeAggregator implements EventAggregator {
+
+    // Bounds the identity cache of long-lived aggregators, which see new RecordedMethod instances with every chunk
+    private static final int MAX_CACHED_METHODS = 1 << 16;
+    private static final int MAX_CACHED_THREADS = 1 << 12;
+
+    // Execution samples are recorded by a sampler thread, and name the thread they sampled in a field of their own
+    private static final String SAMPLED_THREAD_FIELD = "sampledThread";
+    private static final String UNKNOWN_THREAD_NAME = "<unknown>";
+
+    protected final MethodTable methodTable;
+
+    // RecordedMethod instances are shared through the constant pool of a chunk, so identity lookups are enough
+    private final Map<RecordedMethod, Integer> methodIds = new IdentityHashMap<>();
+    private final Map<RecordedThread, String> threadNames = new IdentityHashMap<>();
+    private int[] stackBuffer = new int[64];
+    private int[] lineBuffer = new int[64];
+
+    protected CallTreeAggregator(MethodTable methodTable) {
+        this.methodTable = methodTable;
+    }
+
+    protected void addStack(CallTree callTree, RecordedEvent event, long weight) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace == null) {
+            return;
+        }
+
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        if (frames.size() > stackBuffer.length) {
+            stackBuffer = new int[frames.size()];
+            lineBuffer = new int[frames.size()];
+        }
+
+        int length = 0;
+        for (RecordedFrame frame : frames) {
+            RecordedMethod method = frame.getMethod();
+            if (frame.isJavaFrame() && isNotLambda(method) && method.getType() != null) {
+                stackBuffer[length] = getMethodId(method);
+                lineBuffer[length++] = frame.getLineNumber();
+            }
+        }
+        if (length > 0)
+            callTree.add(stackBuffer, lineBuffer, length, weight, event.getStartTime().getEpochSecond(), getThreadName(event));
+    }
+
+    protected ProcessingMethodResult getResult(CallTree callTree, Attribution attribution, MethodScope methodScope, ResultFilter resultFilter) {
+        MethodCounters counters = switch (attribution) {
+            case SELF -> callTree.getSelfWeights(methodScope, resultFilter);
+            case INCLUSIVE -> callTree.getInclusiveWeights(methodScope, resultFilter);
+        };
+        return counters.toResult(methodTable, callTree.getTotalWeight(resultFilter));
+    }
+
+    private int getMethodId(RecordedMethod method) {
+        Integer methodId = methodIds.get(method);
+        if (methodId == null) {
+            if (methodIds.size() >= MAX_CACHED_METHODS)
+                methodIds.clear();
+            methodId = methodTable.intern(method);
+            methodIds.put(method, methodId);
+        }
+        return methodId;
+    }
+
+    /**
+     * Returns the same instance for every event of a thread, which {@link CallTree} relies on to skip interning it.
+     */
+    private String getThreadName(RecordedEvent event) {
+        RecordedThread thread = event.hasField(SAMPLED_THREAD_FIELD) ? event.getThread(SAMPLED_THREAD_FIELD) : event.getThread();
+        if (thread == null)
+            return UNKNOWN_THREAD_NAME;
+
+        String threadName = threadNames.get(thread);
+        if (threadName == null) {
+            if (threadNames.size() >= MAX_CACHED_THREADS)
+                threadNames.clear();
+            threadName = thread.getJavaName() != null ? thread.getJavaName() : thread.getOSName();
+            if (threadName == null)
+                threadName = UNKNOWN_THREAD_NAME;
+            threadNames.put(thread, threadName);
+        }
+        return threadName;
+    }
+
+    private static boolean isNotLambda(RecordedMethod method) {
+        if (method == null) {
+            return false;
+        }
+
+        // Lambdas shall be skipped so their parent method is counted instead
+        return !method.getName().startsWith("lambda");
+    }
+}
@@ -0,0 +1,111 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The results of every metric of a recording, laid out for keeping in memory while other recordings are visualized.
+ * Method identifiers are stored once for all metrics, and values in primitive arrays indexing into them, so that a
+ * recording takes a fraction of the heap of its {@link ProcessingMethodResult}s.
+ */
+final class CompactResults {
+
+    // Rough sizes of a String with its array, and of an array header, on a 64-bit JVM with compressed references
+    private static final long STRING_OVERHEAD_BYTES = 56;
+    private static final long ARRAY_OVERHEAD_BYTES = 16;
+
+    private final String[] identifiers;
+    private final Map<ProfilingMetric, CompactResult> resultsPerMetric;
+    private final long estimatedSize;
+
+    private CompactResults(String[] identifiers, Map<ProfilingMetric, CompactResult> resultsPerMetric) {
+        this.identifiers = identifiers;
+        this.resultsPerMetric = resultsPerMetric;
+
+        long size = ARRAY_OVERHEAD_BYTES + 4L * identifiers.length;
+        for (String identifier : identifiers) {
+            size += STRING_OVERHEAD_BYTES + identifier.length();
+        }
+        for (CompactResult result : resultsPerMetric.values()) {
+            size += result.getEstimatedSize();
+        }
+        this.estimatedSize = size;
+    }
+
+    static CompactResults of(Map<ProfilingMetric, ProcessingMethodResult> resultsPerMetric) {
+        Map<String, Integer> indexByIdentifier = new HashMap<>();
+        List<String> identifiers = new ArrayList<>();
+        Map<ProfilingMetric, CompactResult> compactResultsPerMetric = new EnumMap<>(ProfilingMetric.class);
+
+        resultsPerMetric.forEach((profilingMetric, result) -> {
+            Map<String, Long> resultMap = result.getResultMap();
+            int[] methods = new int[resultMap.size()];
+            long[] values = new long[resultMap.size()];
+            int i = 0;
+            for (Map.Entry<String, Long> entry : resultMap.entrySet()) {
+                methods[i] = indexByIdentifier.computeIfAbsent(entry.getKey(), identifier -> {
+                    identifiers.add(identifier);
+                    return identifiers.size() - 1;
+                });
+                values[i++] = entry.getValue();
+            }
+
+            Map<String, LineValues> lineResultMap = result.getLineResultMap();
+            int[] lineMethods = new int[lineResultMap.size()];
+            LineValues[] lineValues = new LineValues[lineResultMap.size()];
+            int j = 0;
+            for (Map.Entry<String, LineValues> entry : lineResultMap.entrySet()) {
+                // Every method with line values also has a value of its own
+                lineMethods[j] = indexByIdentifier.get(entry.getKey());
+                lineValues[j++] = entry.getValue();
+            }
+
+            compactResultsPerMetric.put(profilingMetric, new CompactResult(result.getTotalValue(), methods, values, lineMethods, lineValues));
+        });
+        return new CompactResults(identifiers.toArray(String[]::new), compactResultsPerMetric);
+    }
+
+    /**
+     * Rebuilds the results of every metric, sharing identifier instances between them.
+     */
+    Map<ProfilingMetric, ProcessingMethodResult> toResults() {
+        Map<ProfilingMetric, ProcessingMethodResult> results = new EnumMap<>(ProfilingMetric.class);
+        resultsPerMetric.forEach((profilingMetric, result) -> results.put(profilingMetric, result.toResult(identifiers)));
+        return results;
+    }
+
+    long getEstimatedSize() {
+        return estimatedSize;
+    }
+
+    /**
+     * Values of one metric by index into the identifier table. Line values are already held in primitive arrays, so
+     * they are kept as they are.
+     */
+    private record CompactResult(long totalValue, int[] methods, long[] values, int[] lineMethods, LineValues[] lineValues) {
+
+        ProcessingMethodResult toResult(String[] identifiers) {
+            Map<String, Long> resultMap = new HashMap<>(methods.length * 2);
+            for (int i = 0; i < methods.length; i++) {
+                resultMap.put(identifiers[methods[i]], values[i]);
+            }
+
+            Map<String, LineValues> lineResultMap = new HashMap<>(lineMethods.length * 2);
+            for (int i = 0; i < lineMethods.length; i++) {
+                lineResultMap.put(identifiers[lineMethods[i]], lineValues[i]);
+            }
+            return new ProcessingMethodResult(resultMap, lineResultMap, totalValue);
+        }
+
+        long getEstimatedSize() {
+            long size = 3 * ARRAY_OVERHEAD_BYTES + 4L * methods.length + 8L * values.length + 4L * lineMethods.length;
+            for (LineValues lines : lineValues) {
+                size += lines.getEstimatedSize();
+            }
+            return size;
+        }
+    }
+}
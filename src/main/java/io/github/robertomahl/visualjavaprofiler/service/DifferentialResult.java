@@ -0,0 +1,52 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-method change of a metric between a baseline and a candidate recording. Values are normalized by the total of
+ * each recording, so recordings of different lengths compare fairly, and are expressed in {@link #SHARE_SCALE}ths of
+ * that total. Positive values are regressions, negative ones improvements, and methods rank by the size of their
+ * change either way.
+ */
+public final class DifferentialResult extends ProcessingMethodResult {
+
+    public static final long SHARE_SCALE = 1_000_000L;
+
+    private final ProcessingMethodResult baseline;
+    private final ProcessingMethodResult candidate;
+
+    private DifferentialResult(Map<String, Long> resultMap, ProcessingMethodResult baseline, ProcessingMethodResult candidate) {
+        super(resultMap);
+        this.baseline = baseline;
+        this.candidate = candidate;
+    }
+
+    /**
+     * Compares two results of the same metric. Changes smaller than the given share of the total are treated as noise
+     * and left out.
+     */
+    public static DifferentialResult compare(ProcessingMethodResult baseline, ProcessingMethodResult candidate, double significanceThreshold) {
+        Set<String> methodIdentifiers = new HashSet<>(baseline.getResultMap().keySet());
+        methodIdentifiers.addAll(candidate.getResultMap().keySet());
+
+        Map<String, Long> resultMap = new HashMap<>();
+        for (String methodIdentifier : methodIdentifiers) {
+            double delta = getShare(candidate, methodIdentifier) - getShare(baseline, methodIdentifier);
+            if (Math.abs(delta) >= significanceThreshold)
+                resultMap.put(methodIdentifier, Math.round(delta * SHARE_SCALE));
+        }
+        return new DifferentialResult(resultMap, baseline, candidate);
+    }
+
+    public boolean isComparing(ProcessingMethodResult baseline, ProcessingMethodResult candidate) {
+        return this.baseline == baseline && this.candidate == candidate;
+    }
+
+    private static double getShare(ProcessingMethodResult result, String methodIdentifier) {
+        Long value = result.getResultMap().get(methodIdentifier);
+        return value == null || result.getTotalValue() == 0 ? 0.0 : (double) value / result.getTotalValue();
+    }
+}
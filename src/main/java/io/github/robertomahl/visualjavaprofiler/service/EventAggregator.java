@@ -0,0 +1,50 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.util.Set;
+import jdk.jfr.consumer.RecordedEvent;
+
+/**
+ * Per-read state of a {@link ProfilingMetricProcessingMethod}.
+ * <p>
+ * An aggregator is confined to a single thread while events are being accepted. Aggregators created for the same
+ * read are merged together once the recording has been fully dispatched.
+ */
+public interface EventAggregator {
+
+    void accept(RecordedEvent event);
+
+    /**
+     * Folds the state of another aggregator, created by the same processing method, into this one.
+     */
+    default void merge(EventAggregator other) {
+        merge(other, 1.0);
+    }
+
+    /**
+     * Folds the state of another aggregator into this one with its weights scaled by the given factor, such as when
+     * some recordings of a merge stand for more traffic than others.
+     */
+    void merge(EventAggregator other, double weight);
+
+    /**
+     * Builds the result out of the events passing the filter, attributing them only to methods within the given scope.
+     * Can be called any number of times once all events have been accepted.
+     */
+    ProcessingMethodResult getResult(Attribution attribution, MethodScope methodScope, ResultFilter resultFilter);
+
+    /**
+     * Returns the seconds that accepted events were recorded at, or null if none were accepted.
+     */
+    TimeWindow getTimeRange();
+
+    /**
+     * Returns the names of the threads that accepted events were recorded on.
+     */
+    Set<String> getThreadNames();
+
+    /**
+     * Returns roughly how many bytes of heap the accepted events take.
+     */
+    long getEstimatedSize();
+
+}
@@ -0,0 +1,86 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+/**
+ * How many of the hottest methods of a result to highlight, either as a count such as {@code 50} or as a share of the
+ * methods with values such as {@code 5%}.
+ */
+public final class HotMethodCutoff {
+
+    public static final HotMethodCutoff ALL = new HotMethodCutoff(Integer.MAX_VALUE, 100.0);
+
+    private static final String PERCENT_SUFFIX = "%";
+
+    private final int topMethods;
+    private final double topPercent;
+
+    private HotMethodCutoff(int topMethods, double topPercent) {
+        this.topMethods = topMethods;
+        this.topPercent = topPercent;
+    }
+
+    public static HotMethodCutoff topMethods(int count) {
+        if (count <= 0)
+            throw new IllegalArgumentException("Number of methods must be positive, not " + count);
+        return new HotMethodCutoff(count, 100.0);
+    }
+
+    public static HotMethodCutoff topPercent(double percent) {
+        if (!(percent > 0 && percent <= 100))
+            throw new IllegalArgumentException("Percentage must be above 0 and at most 100, not " + percent);
+        return new HotMethodCutoff(Integer.MAX_VALUE, percent);
+    }
+
+    /**
+     * Parses a count or a percentage. Blank input yields {@link #ALL}.
+     */
+    public static HotMethodCutoff parse(String input) {
+        String value = input.trim();
+        if (value.isEmpty())
+            return ALL;
+
+        try {
+            return value.endsWith(PERCENT_SUFFIX)
+                    ? topPercent(Double.parseDouble(value.substring(0, value.length() - PERCENT_SUFFIX.length()).trim()))
+                    : topMethods(Integer.parseInt(value));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Not a number of methods or a percentage: " + input);
+        }
+    }
+
+    /**
+     * Returns how many of the given number of ranked methods pass the cutoff. A percentage always lets the hottest
+     * method through.
+     */
+    public int getCount(int rankedMethods) {
+        int percentCount = topPercent >= 100.0 ? rankedMethods : (int) Math.max(1, Math.ceil(rankedMethods * topPercent / 100.0));
+        return Math.min(Math.min(topMethods, percentCount), rankedMethods);
+    }
+
+    public boolean isAll() {
+        return topMethods == Integer.MAX_VALUE && topPercent >= 100.0;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof HotMethodCutoff hotMethodCutoff
+                && topMethods == hotMethodCutoff.topMethods
+                && topPercent == hotMethodCutoff.topPercent;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Integer.hashCode(topMethods) + Double.hashCode(topPercent);
+    }
+
+    /**
+     * Returns the cutoff in the form accepted by {@link #parse(String)}.
+     */
+    @Override
+    public String toString() {
+        if (isAll())
+            return "";
+        if (topMethods != Integer.MAX_VALUE)
+            return Integer.toString(topMethods);
+        return (topPercent == Math.rint(topPercent) ? Long.toString((long) topPercent) : Double.toString(topPercent)) + PERCENT_SUFFIX;
+    }
+}
@@ -1,41 +1,440 @@
 package io.github.robertomahl.visualjavaprofiler.service;
 
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
-import java.util.HashMap;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
-import jdk.jfr.consumer.RecordingFile;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service(Service.Level.PROJECT)
-public final class JFRProcessingService {
+public final class JFRProcessingService implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(JFRProcessingService.class);
+
+    // Changes below 0.1% of the total of a recording are within the noise of sampling
+    private static final double SIGNIFICANCE_THRESHOLD = 0.001;
+
+    private static final String RESULT_STORE_BUDGET_KEY = "profilerLens.resultStore.budgetMb";
 
     private ProfilingMetric activeProfilingMetric = ProfilingMetric.METHOD_RUN_COUNT;
+    private HotMethodCutoff hotMethodCutoff = HotMethodCutoff.ALL;
 
     private final Project project;
     private final Map<ProfilingMetric, ProcessingMethodResult> profilingResultsPerMetric;
+    private final Map<ProfilingMetric, ProcessingMethodResult> baselineResultsPerMetric;
+    private final Map<ProfilingMetric, DifferentialResult> differentialResultsPerMetric;
+    private final ProcessingResultStore processingResultStore;
+    // Serializes reads, filter changes, starting live profiling and applying its snapshots. The getters that actions poll
+    // on every update only read the fields below, which are replaced as a whole, and never wait for a read to finish.
+    // read the fields below, which are replaced as a whole, and never wait for a read to finish.
+    private final Object loadLock = new Object();
+    private final AtomicReference<LiveProfilingSession> liveProfilingSession = new AtomicReference<>();
+    private volatile LoadedRecordings loadedRecordings = null;
 
     JFRProcessingService(Project project) {
         this.project = project;
-        this.profilingResultsPerMetric = new HashMap<>();
+        this.profilingResultsPerMetric = new ConcurrentHashMap<>();
+        this.baselineResultsPerMetric = new ConcurrentHashMap<>();
+        this.differentialResultsPerMetric = new ConcurrentHashMap<>();
+        this.processingResultStore = new ProcessingResultStore(
+                new ProcessingResultCache(PathManager.getSystemDir().resolve("profiler-lens").resolve(project.getLocationHash())),
+                () -> Registry.intValue(RESULT_STORE_BUDGET_KEY) * 1024L * 1024L);
     }
 
     public boolean isProfilingResultsProcessed() {
         return profilingResultsPerMetric.get(activeProfilingMetric) != null;
     }
 
+    /**
+     * Returns the results of the active metric or, while a baseline is set, their {@link DifferentialResult} against it.
+     */
     public ProcessingMethodResult getProfilingResults() {
-        return profilingResultsPerMetric.get(activeProfilingMetric);
+        ProcessingMethodResult candidate = profilingResultsPerMetric.get(activeProfilingMetric);
+        // Compared in the background whenever either side changes, since this is called on the EDT
+        DifferentialResult differentialResult = differentialResultsPerMetric.get(activeProfilingMetric);
+        return candidate != null && differentialResult != null ? differentialResult : candidate;
+    }
+
+    public ProfilingMetric getActiveProfilingMetric() {
+        return activeProfilingMetric;
     }
 
     public void setActiveProfilingMetric(ProfilingMetric profilingMetric) {
         this.activeProfilingMetric = profilingMetric;
     }
 
-    public void read(RecordingFile recordingFile) {
-        for (ProfilingMetric profilingMetric : ProfilingMetric.values()) {
-            ProcessingMethodResult result = profilingMetric.compute(project, recordingFile);
-            if (result != null)
-                profilingResultsPerMetric.put(profilingMetric, result);
+    /**
+     * Returns how many of the hottest methods of each result are visualized.
+     */
+    public HotMethodCutoff getHotMethodCutoff() {
+        return hotMethodCutoff;
+    }
+
+    public void setHotMethodCutoff(HotMethodCutoff hotMethodCutoff) {
+        this.hotMethodCutoff = hotMethodCutoff;
+    }
+
+    /**
+     * Reads either JFR recordings, merged into one result per metric, or a single result file written by
+     * {@link RecordingAggregator} outside of the IDE. Result files hold no events, so their results can neither be
+     * filtered nor merged.
+     * <p>
+     * While recordings are processed, partial results replace the current ones every few seconds and subscribers of
+     * {@link ProfilingResultsListener#TOPIC} are notified. If the indicator is canceled, the previous results are
+     * restored. Live profiling is stopped first, since its snapshots would otherwise replace the results read.
+     * <p>
+     * The index of the previous recordings is dropped before reading, so that two indexes are never held at once. It is
+     * built again if the read fails and a filter is chosen for the previous results.
+     */
+    public void read(List<WeightedRecording> recordings, ProgressIndicator indicator) throws IOException {
+        synchronized (loadLock) {
+            stopLiveProfiling();
+            LoadedRecordings previous = loadedRecordings;
+            loadedRecordings = previous != null ? previous.withIndex(null) : null;
+            try {
+                loadedRecordings = readRecordings(recordings, indicator);
+            } finally {
+                updateDifferentialResults();
+                updatePinnedBytes();
+            }
+        }
+    }
+
+    /**
+     * Reads recordings into the current results, returning them unless they were a result file, which cannot be
+     * filtered.
+     */
+    private LoadedRecordings readRecordings(List<WeightedRecording> recordings, ProgressIndicator indicator) throws IOException {
+        if (recordings.size() == 1 && ProcessingResultFile.isResultFile(recordings.get(0).path())) {
+            Map<ProfilingMetric, ProcessingMethodResult> resultsPerMetric = ProcessingResultFile.read(recordings.get(0).path());
+
+            profilingResultsPerMetric.clear();
+            profilingResultsPerMetric.putAll(resultsPerMetric);
+            return null;
+        }
+        for (WeightedRecording recording : recordings) {
+            if (ProcessingResultFile.isResultFile(recording.path()))
+                throw new IOException("Result files cannot be merged with other recordings: " + recording.path());
+        }
+
+        // Merges depend on the whole selection and its weights, so only single recordings are cached
+        RecordingFingerprint fingerprint = recordings.size() == 1 && recordings.get(0).weight() == 1.0
+                ? RecordingFingerprint.of(recordings.get(0).path())
+                : null;
+
+        RecordingIndex index = null;
+        Path recording = recordings.get(0).path();
+        Map<ProfilingMetric, ProcessingMethodResult> resultsPerMetric = fingerprint != null ? processingResultStore.get(fingerprint, recording, this::resolveClasses) : null;
+        if (resultsPerMetric == null) {
+            Map<ProfilingMetric, ProcessingMethodResult> previousResultsPerMetric = Map.copyOf(profilingResultsPerMetric);
+            try {
+                index = index(recordings, track(indicator, true));
+            } catch (IOException | RuntimeException ex) {
+                // Partial results of an aborted read would pass for complete ones
+                profilingResultsPerMetric.clear();
+                profilingResultsPerMetric.putAll(previousResultsPerMetric);
+                updateDifferentialResults();
+                notifyResultsChanged();
+                throw ex;
+            }
+            resultsPerMetric = index.getResults(ResultFilter.ALL);
+            if (fingerprint != null)
+                processingResultStore.put(fingerprint, recording, resultsPerMetric, index.getResultScope());
+        }
+
+        profilingResultsPerMetric.putAll(resultsPerMetric);
+        return new LoadedRecordings(recordings, index, ResultFilter.ALL);
+    }
+
+    /**
+     * Returns the seconds spanned by the last recordings read. Processes them again if their results were loaded from
+     * the cache, which holds no index, reporting to the indicator and stopping if it is canceled.
+     */
+    public TimeWindow getRecordingTimeRange(ProgressIndicator indicator) throws IOException {
+        synchronized (loadLock) {
+            return getIndexedRecordings(indicator).index().getTimeRange();
+        }
+    }
+
+    /**
+     * Returns the thread names of the last recordings read, with the same caveat as
+     * {@link #getRecordingTimeRange(ProgressIndicator)}.
+     */
+    public Set<String> getRecordingThreadNames(ProgressIndicator indicator) throws IOException {
+        synchronized (loadLock) {
+            return getIndexedRecordings(indicator).index().getThreadNames();
+        }
+    }
+
+    public ResultFilter getResultFilter() {
+        LoadedRecordings loaded = loadedRecordings;
+        return loaded != null ? loaded.resultFilter() : ResultFilter.ALL;
+    }
+
+    /**
+     * Recomputes the results of every metric out of the events of the last recordings read that pass the filter, such
+     * as those of its steady state, or of its request handler threads only. The recordings are processed again if they
+     * have no index yet, as in {@link #getRecordingTimeRange(ProgressIndicator)}.
+     */
+    public void setResultFilter(ResultFilter resultFilter, ProgressIndicator indicator) throws IOException {
+        synchronized (loadLock) {
+            LoadedRecordings loaded = getIndexedRecordings(indicator);
+            profilingResultsPerMetric.putAll(loaded.index().getResults(resultFilter));
+            loadedRecordings = loaded.withResultFilter(resultFilter);
+            updateDifferentialResults();
+            updatePinnedBytes();
+        }
+    }
+
+    public boolean canFilterResults() {
+        return loadedRecordings != null && liveProfilingSession.get() == null;
+    }
+
+    /**
+     * Returns the recordings whose results are held in memory, most recently used first, which are read again without
+     * any processing.
+     */
+    public List<Path> getStoredRecordings() {
+        return processingResultStore.getRecordings();
+    }
+
+    /**
+     * Sets the recording that results are compared against, such as one made before a performance change, or a result
+     * file written by {@link RecordingAggregator}. Recordings are read like in {@link #read(List, ProgressIndicator)},
+     * reporting to the indicator and stopping if it is canceled, but never publish partial results.
+     */
+    public void readBaseline(Path recording, ProgressIndicator indicator) throws IOException {
+        synchronized (loadLock) {
+            Map<ProfilingMetric, ProcessingMethodResult> resultsPerMetric = ProcessingResultFile.isResultFile(recording)
+                    ? ProcessingResultFile.read(recording)
+                    : load(recording, track(indicator, false));
+
+            baselineResultsPerMetric.clear();
+            baselineResultsPerMetric.putAll(resultsPerMetric);
+            updateDifferentialResults();
+            updatePinnedBytes();
+        }
+    }
+
+    public void clearBaseline() {
+        baselineResultsPerMetric.clear();
+        updateDifferentialResults();
+        updatePinnedBytes();
+    }
+
+    public boolean isComparingWithBaseline() {
+        return !baselineResultsPerMetric.isEmpty();
+    }
+
+    /**
+     * Returns the JFR repository of a running local JVM, or null if Flight Recorder is not running in it.
+     */
+    public Path findJfrRepository(String processId) throws IOException {
+        return LiveProfilingSession.findRepository(processId);
+    }
+
+    /**
+     * Follows the JFR repository of a running JVM, replacing the results of every metric with a fresh snapshot about
+     * once per second. Subscribers of {@link ProfilingResultsListener#TOPIC} are notified after each snapshot.
+     */
+    public void startLiveProfiling(Path repository) throws IOException {
+        synchronized (loadLock) {
+            stopLiveProfiling();
+
+            loadedRecordings = null;
+            updatePinnedBytes();
+            LiveProfilingSession session = new LiveProfilingSession(repository, RecordingIndex.getProcessingMethods(), this::publishLiveResults,
+                    error -> LOG.warn("Live profiling of " + repository + " failed", error));
+            liveProfilingSession.set(session);
+            session.start();
+        }
+    }
+
+    /**
+     * Stops following the JVM, if any. Does not wait for a read in progress, so that it can be called while the project
+     * is disposed.
+     */
+    public void stopLiveProfiling() {
+        LiveProfilingSession session = liveProfilingSession.getAndSet(null);
+        if (session != null)
+            session.close();
+    }
+
+    public boolean isLiveProfiling() {
+        return liveProfilingSession.get() != null;
+    }
+
+    private void publishResults(Map<ProfilingMetricProcessingMethod, EventAggregator> aggregators, MethodTable methodTable) {
+        profilingResultsPerMetric.putAll(new RecordingIndex(aggregators, resolveScope(methodTable)).getResults(ResultFilter.ALL));
+        updateDifferentialResults();
+        notifyResultsChanged();
+    }
+
+    /**
+     * Publishes a snapshot of a live session unless it was stopped while the results were computed, in which case they
+     * would replace those of whatever is read next. Takes the load lock only once the results are computed.
+     */
+    private void publishLiveResults(Map<ProfilingMetricProcessingMethod, EventAggregator> aggregators, MethodTable methodTable) {
+        Map<ProfilingMetric, ProcessingMethodResult> resultsPerMetric =
+                new RecordingIndex(aggregators, resolveScope(methodTable)).getResults(ResultFilter.ALL);
+        synchronized (loadLock) {
+            if (liveProfilingSession.get() == null)
+                return;
+            profilingResultsPerMetric.putAll(resultsPerMetric);
+        }
+        updateDifferentialResults();
+        notifyResultsChanged();
+    }
+
+    /**
+     * Compares the results of every metric with those of the baseline, if any, keeping comparisons whose sides are
+     * unchanged. Called by whichever thread changed either side, which is never the EDT unless the baseline was
+     * cleared, so that getters only look comparisons up.
+     */
+    private void updateDifferentialResults() {
+        // Serialized so that the comparisons stored last are those of the latest results
+        synchronized (differentialResultsPerMetric) {
+            for (ProfilingMetric profilingMetric : ProfilingMetric.values()) {
+                ProcessingMethodResult candidate = profilingResultsPerMetric.get(profilingMetric);
+                ProcessingMethodResult baseline = baselineResultsPerMetric.get(profilingMetric);
+                DifferentialResult differentialResult = differentialResultsPerMetric.get(profilingMetric);
+                if (candidate == null || baseline == null)
+                    differentialResultsPerMetric.remove(profilingMetric);
+                else if (differentialResult == null || !differentialResult.isComparing(baseline, candidate))
+                    differentialResultsPerMetric.put(profilingMetric, DifferentialResult.compare(baseline, candidate, SIGNIFICANCE_THRESHOLD));
+            }
+        }
+    }
+
+    /**
+     * Counts the index and the results held by this service against the budget of the result store, which drops
+     * stored results to make room for them.
+     */
+    private void updatePinnedBytes() {
+        LoadedRecordings loaded = loadedRecordings;
+        long pinnedBytes = loaded != null && loaded.index() != null ? loaded.index().getEstimatedSize() : 0L;
+        for (ProcessingMethodResult result : profilingResultsPerMetric.values()) {
+            pinnedBytes += result.getEstimatedSize();
+        }
+        for (ProcessingMethodResult result : baselineResultsPerMetric.values()) {
+            pinnedBytes += result.getEstimatedSize();
+        }
+        for (ProcessingMethodResult result : differentialResultsPerMetric.values()) {
+            pinnedBytes += result.getEstimatedSize();
+        }
+        processingResultStore.setPinnedBytes(pinnedBytes);
+    }
+
+    private void notifyResultsChanged() {
+        project.getMessageBus().syncPublisher(ProfilingResultsListener.TOPIC).profilingResultsChanged();
+    }
+
+    /**
+     * Reports the progress of a read to the indicator, and publishes its partial results unless they would replace
+     * results that are already complete.
+     */
+    private ProcessingProgress track(ProgressIndicator indicator, boolean publishPartialResults) {
+        return new ProcessingProgress() {
+            @Override
+            public void checkCanceled() {
+                indicator.checkCanceled();
+            }
+
+            @Override
+            public void setFraction(double fraction) {
+                indicator.setFraction(fraction);
+            }
+
+            @Override
+            public boolean acceptsPartialResults() {
+                return publishPartialResults;
+            }
+
+            @Override
+            public void partialResultsAvailable(Map<ProfilingMetricProcessingMethod, EventAggregator> aggregators, MethodTable methodTable) {
+                publishResults(aggregators, methodTable);
+            }
+        };
+    }
+
+    @Override
+    public void dispose() {
+        stopLiveProfiling();
+    }
+
+    private Map<ProfilingMetric, ProcessingMethodResult> load(Path recording, ProcessingProgress progress) throws IOException {
+        RecordingFingerprint fingerprint = RecordingFingerprint.of(recording);
+
+        Map<ProfilingMetric, ProcessingMethodResult> resultsPerMetric = processingResultStore.get(fingerprint, recording, this::resolveClasses);
+        if (resultsPerMetric == null) {
+            RecordingIndex index = index(List.of(WeightedRecording.of(recording)), progress);
+            resultsPerMetric = index.getResults(ResultFilter.ALL);
+            processingResultStore.put(fingerprint, recording, resultsPerMetric, index.getResultScope());
+        }
+        return resultsPerMetric;
+    }
+
+    /**
+     * Returns the last recordings read along with their index, processing them again if their results were loaded from
+     * the cache. Must be called while holding the load lock.
+     */
+    private LoadedRecordings getIndexedRecordings(ProgressIndicator indicator) throws IOException {
+        LoadedRecordings loaded = loadedRecordings;
+        if (loaded == null)
+            throw new IllegalStateException("No recording has been read");
+
+        if (loaded.index() == null) {
+            // The results are those of the cache already, so only the index is built
+            loaded = loaded.withIndex(index(loaded.recordings(), track(indicator, false)));
+            loadedRecordings = loaded;
+            updatePinnedBytes();
+        }
+        return loaded;
+    }
+
+    private RecordingIndex index(List<WeightedRecording> recordings, ProcessingProgress progress) throws IOException {
+        long startNanos = System.nanoTime();
+        RecordingIndex index = RecordingIndex.read(recordings, this::resolveScope, AppExecutorUtil::createBoundedApplicationPoolExecutor, progress);
+        long nanos = System.nanoTime() - startNanos;
+
+        project.getService(ProcessingDiagnostics.class).recordRead(recordings.size(), index.getEventCount(), nanos);
+        LOG.info("Processed " + recordings.size() + " recording(s), " + index.getEventCount() + " events in "
+                + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms");
+        return index;
+    }
+
+    private MethodScope resolveScope(MethodTable methodTable) {
+        Set<String> classesInProjectScope = resolveClasses(methodTable.getClassNames());
+        return MethodScope.resolve(methodTable, classesInProjectScope::contains);
+    }
+
+    private Set<String> resolveClasses(Set<String> classNames) {
+        return project.getService(ProjectScopeResolver.class).resolve(classNames);
+    }
+
+    /**
+     * The last recordings read, the filter of the current results, and the index of the recordings once they have been
+     * processed rather than loaded from the cache.
+     */
+    private record LoadedRecordings(List<WeightedRecording> recordings, RecordingIndex index, ResultFilter resultFilter) {
+
+        LoadedRecordings withIndex(RecordingIndex index) {
+            return new LoadedRecordings(recordings, index, resultFilter);
+        }
+
+        LoadedRecordings withResultFilter(ResultFilter resultFilter) {
+            return new LoadedRecordings(recordings, index, resultFilter);
         }
     }
 }
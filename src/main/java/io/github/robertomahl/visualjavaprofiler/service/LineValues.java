@@ -0,0 +1,48 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.util.Arrays;
+
+/**
+ * Values of the source lines of a single method, held in parallel primitive arrays sorted by line number so that
+ * rendering a file costs neither boxing nor hashing.
+ */
+public final class LineValues {
+
+    private final int[] lines;
+    private final long[] values;
+
+    public LineValues(int[] lines, long[] values) {
+        this.lines = lines;
+        this.values = values;
+    }
+
+    public int size() {
+        return lines.length;
+    }
+
+    /**
+     * Returns the 1-based source line of the entry at the given index.
+     */
+    public int getLine(int index) {
+        return lines[index];
+    }
+
+    public long getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * Returns the value of the given 1-based source line, or 0 if nothing was attributed to it.
+     */
+    public long get(int line) {
+        int index = Arrays.binarySearch(lines, line);
+        return index >= 0 ? values[index] : 0L;
+    }
+
+    /**
+     * Returns roughly how many bytes of heap the values take.
+     */
+    long getEstimatedSize() {
+        return 48L + 12L * lines.length;
+    }
+}
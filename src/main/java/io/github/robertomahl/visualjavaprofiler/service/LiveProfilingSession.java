@@ -0,0 +1,108 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import com.sun.tools.attach.AttachNotSupportedException;
+import com.sun.tools.attach.VirtualMachine;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import jdk.jfr.consumer.EventStream;
+
+/**
+ * Follows the JFR repository of a running JVM and folds new events into a single set of aggregators as they are
+ * flushed.
+ * <p>
+ * Events and flushes are all handled on the stream's own thread, so the aggregators are never accessed concurrently and
+ * are handed to the publisher without any lock, on that same thread. They are handed over at most once per
+ * {@link #PUBLISH_INTERVAL_NANOS}, and only when new events have arrived since the previous time. None is handed over
+ * once {@link #close()} has been called, except to a publisher that was already running, which has to tell for itself
+ * whether its results are still wanted.
+ */
+class LiveProfilingSession implements AutoCloseable {
+
+    private static final long PUBLISH_INTERVAL_NANOS = 1_000_000_000L;
+
+    // Set by JFR in the target JVM once its repository has been created
+    private static final String JFR_REPOSITORY_PROPERTY = "jdk.jfr.repository";
+
+    private final EventStream eventStream;
+    private final MethodTable methodTable = new MethodTable();
+    private final Map<ProfilingMetricProcessingMethod, EventAggregator> aggregators = new LinkedHashMap<>();
+    private final BiConsumer<Map<ProfilingMetricProcessingMethod, EventAggregator>, MethodTable> publisher;
+
+    private long lastPublishNanos = System.nanoTime();
+    private boolean hasUnpublishedEvents = false;
+    // Set from whichever thread closes the session, which never waits for the stream's thread
+    private volatile boolean closed = false;
+
+    LiveProfilingSession(Path repository,
+                         Collection<ProfilingMetricProcessingMethod> processingMethods,
+                         BiConsumer<Map<ProfilingMetricProcessingMethod, EventAggregator>, MethodTable> publisher,
+                         Consumer<Throwable> errorHandler) throws IOException {
+        this.eventStream = EventStream.openRepository(repository);
+        this.publisher = publisher;
+
+        for (ProfilingMetricProcessingMethod processingMethod : new LinkedHashSet<>(processingMethods)) {
+            // Results of a live session are never filtered, so per-second partitions would only pile up
+            EventAggregator aggregator = processingMethod.createAggregator(methodTable, false);
+            aggregators.put(processingMethod, aggregator);
+
+            for (String eventType : processingMethod.getEventTypes()) {
+                eventStream.onEvent(eventType, event -> {
+                    aggregator.accept(event);
+                    hasUnpublishedEvents = true;
+                });
+            }
+        }
+        eventStream.onFlush(this::publishIfDue);
+        eventStream.onError(errorHandler);
+    }
+
+    /**
+     * Attaches to a running local JVM and returns its JFR repository, or null if Flight Recorder is not running in it.
+     */
+    static Path findRepository(String processId) throws IOException {
+        VirtualMachine virtualMachine;
+        try {
+            virtualMachine = VirtualMachine.attach(processId);
+        } catch (AttachNotSupportedException ex) {
+            throw new IOException("Cannot attach to JVM " + processId, ex);
+        }
+
+        try {
+            String repository = virtualMachine.getSystemProperties().getProperty(JFR_REPOSITORY_PROPERTY);
+            return repository != null ? Path.of(repository) : null;
+        } finally {
+            try {
+                virtualMachine.detach();
+            } catch (IOException ignored) {
+                // Detaching is best effort, the properties have already been read
+            }
+        }
+    }
+
+    void start() {
+        eventStream.startAsync();
+    }
+
+    private void publishIfDue() {
+        long now = System.nanoTime();
+        // The stream may still be flushing while it is closed, after its results have been replaced
+        if (closed || !hasUnpublishedEvents || now - lastPublishNanos < PUBLISH_INTERVAL_NANOS)
+            return;
+
+        lastPublishNanos = now;
+        hasUnpublishedEvents = false;
+        publisher.accept(aggregators, methodTable);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        eventStream.close();
+    }
+}
@@ -0,0 +1,157 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Primitive counter table indexed by {@link MethodTable} IDs, optionally broken down by source line. Instances are
+ * confined to a single aggregator, hence to a single thread, and are summed up when aggregators are merged.
+ * <p>
+ * Counters hold fractions, which weighted recordings contribute, and are only rounded to whole units once per method
+ * and line when the result is built.
+ */
+public final class MethodCounters {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long EMPTY_LINE_KEY = -1L;
+
+    private double[] values = new double[INITIAL_CAPACITY];
+
+    // Open-addressing map from (method ID, line number), packed into a long, to a value
+    private long[] lineKeys = newLineKeys(INITIAL_CAPACITY);
+    private double[] lineValues = new double[INITIAL_CAPACITY];
+    private int lineCount = 0;
+
+    public void add(int methodId, double delta) {
+        if (methodId >= values.length)
+            values = Arrays.copyOf(values, Math.max(methodId + 1, values.length * 2));
+        values[methodId] += delta;
+    }
+
+    /**
+     * Adds to the counter of a method and to that of one of its lines. Lines that are unknown (not positive) only count
+     * towards the method.
+     */
+    public void add(int methodId, int lineNumber, double delta) {
+        add(methodId, delta);
+        if (lineNumber > 0)
+            addLine(toLineKey(methodId, lineNumber), delta);
+    }
+
+    public double get(int methodId) {
+        return methodId < values.length ? values[methodId] : 0.0;
+    }
+
+    public void merge(MethodCounters other) {
+        if (other.values.length > values.length)
+            values = Arrays.copyOf(values, other.values.length);
+        for (int i = 0; i < other.values.length; i++) {
+            values[i] += other.values[i];
+        }
+        for (int slot = 0; slot < other.lineKeys.length; slot++) {
+            if (other.lineKeys[slot] != EMPTY_LINE_KEY)
+                addLine(other.lineKeys[slot], other.lineValues[slot]);
+        }
+    }
+
+    /**
+     * Builds the result of these counters, out of a total that also includes whatever was attributed to no method.
+     */
+    public ProcessingMethodResult toResult(MethodTable methodTable, long totalValue) {
+        Map<String, Long> resultMap = new HashMap<>();
+        for (int methodId = 0; methodId < values.length; methodId++) {
+            long value = Math.round(values[methodId]);
+            if (value != 0)
+                resultMap.put(methodTable.getIdentifier(methodId), value);
+        }
+        return new ProcessingMethodResult(resultMap, getLineResultMap(methodTable), totalValue);
+    }
+
+    /**
+     * Returns the lines of the methods that are in the result, leaving out those whose values round to 0, like the
+     * result does.
+     */
+    private Map<String, LineValues> getLineResultMap(MethodTable methodTable) {
+        // Sorting the packed keys groups them by method, with the lines of each method in ascending order
+        long[] sortedKeys = new long[lineCount];
+        int count = 0;
+        for (long lineKey : lineKeys) {
+            if (lineKey != EMPTY_LINE_KEY)
+                sortedKeys[count++] = lineKey;
+        }
+        Arrays.sort(sortedKeys);
+
+        Map<String, LineValues> lineResultMap = new HashMap<>();
+        for (int start = 0, end; start < sortedKeys.length; start = end) {
+            int methodId = (int) (sortedKeys[start] >>> 32);
+            end = start + 1;
+            while (end < sortedKeys.length && (int) (sortedKeys[end] >>> 32) == methodId) {
+                end++;
+            }
+
+            if (Math.round(get(methodId)) == 0)
+                continue;
+
+            int[] lines = new int[end - start];
+            long[] lineTotals = new long[end - start];
+            int keptLines = 0;
+            for (int i = start; i < end; i++) {
+                long lineTotal = Math.round(lineValues[findSlot(sortedKeys[i])]);
+                if (lineTotal != 0) {
+                    lines[keptLines] = (int) sortedKeys[i];
+                    lineTotals[keptLines++] = lineTotal;
+                }
+            }
+            if (keptLines > 0)
+                lineResultMap.put(methodTable.getIdentifier(methodId),
+                        new LineValues(Arrays.copyOf(lines, keptLines), Arrays.copyOf(lineTotals, keptLines)));
+        }
+        return lineResultMap;
+    }
+
+    private void addLine(long lineKey, double delta) {
+        int slot = findSlot(lineKey);
+        if (lineKeys[slot] == EMPTY_LINE_KEY) {
+            lineKeys[slot] = lineKey;
+            if (++lineCount * 2 > lineKeys.length) {
+                rehashLines();
+                slot = findSlot(lineKey);
+            }
+        }
+        lineValues[slot] += delta;
+    }
+
+    private int findSlot(long lineKey) {
+        int mask = lineKeys.length - 1;
+        int slot = Long.hashCode(lineKey * 0x9E3779B97F4A7C15L) & mask;
+        while (lineKeys[slot] != EMPTY_LINE_KEY && lineKeys[slot] != lineKey) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehashLines() {
+        long[] oldKeys = lineKeys;
+        double[] oldValues = lineValues;
+        lineKeys = newLineKeys(oldKeys.length * 2);
+        lineValues = new double[oldKeys.length * 2];
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY_LINE_KEY) {
+                int newSlot = findSlot(oldKeys[slot]);
+                lineKeys[newSlot] = oldKeys[slot];
+                lineValues[newSlot] = oldValues[slot];
+            }
+        }
+    }
+
+    private static long[] newLineKeys(int capacity) {
+        long[] lineKeys = new long[capacity];
+        Arrays.fill(lineKeys, EMPTY_LINE_KEY);
+        return lineKeys;
+    }
+
+    private static long toLineKey(int methodId, int lineNumber) {
+        return ((long) methodId << 32) | lineNumber;
+    }
+}
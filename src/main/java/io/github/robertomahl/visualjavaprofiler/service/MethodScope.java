@@ -0,0 +1,42 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * The set of {@link MethodTable} IDs whose declaring class belongs to the analysed project.
+ */
+public final class MethodScope {
+
+    private final BitSet methodsInScope;
+    private final ResultScope resultScope;
+
+    private MethodScope(BitSet methodsInScope, ResultScope resultScope) {
+        this.methodsInScope = methodsInScope;
+        this.resultScope = resultScope;
+    }
+
+    public static MethodScope resolve(MethodTable methodTable, Predicate<String> isClassInScope) {
+        BitSet methodsInScope = new BitSet(methodTable.size());
+        Set<String> classNames = new HashSet<>();
+        Set<String> classesInScope = new HashSet<>();
+        for (int methodId = 0; methodId < methodTable.size(); methodId++) {
+            String className = methodTable.getClassName(methodId);
+            if (classNames.add(className) && isClassInScope.test(className))
+                classesInScope.add(className);
+            if (classesInScope.contains(className))
+                methodsInScope.set(methodId);
+        }
+        return new MethodScope(methodsInScope, new ResultScope(classNames, classesInScope));
+    }
+
+    public boolean contains(int methodId) {
+        return methodsInScope.get(methodId);
+    }
+
+    ResultScope getResultScope() {
+        return resultScope;
+    }
+}
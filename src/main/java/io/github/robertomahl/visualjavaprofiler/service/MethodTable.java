@@ -0,0 +1,53 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import jdk.jfr.consumer.RecordedMethod;
+
+/**
+ * Interns every distinct method of a recording into a dense integer ID, shared by all aggregators of the same read.
+ * <p>
+ * Method identifiers ({@code type.name(descriptor)}) are only built on demand, once per method, when the final
+ * {@link ProcessingMethodResult} is produced.
+ */
+public final class MethodTable {
+
+    private final Map<MethodKey, Integer> idsByKey = new HashMap<>();
+    private final List<MethodKey> keys = new ArrayList<>();
+
+    public synchronized int intern(RecordedMethod method) {
+        MethodKey key = new MethodKey(method.getType().getName(), method.getName(), method.getDescriptor());
+        return idsByKey.computeIfAbsent(key, k -> {
+            keys.add(k);
+            return keys.size() - 1;
+        });
+    }
+
+    public synchronized int size() {
+        return keys.size();
+    }
+
+    public synchronized String getClassName(int methodId) {
+        return keys.get(methodId).className();
+    }
+
+    public synchronized Set<String> getClassNames() {
+        Set<String> classNames = new HashSet<>();
+        for (MethodKey key : keys) {
+            classNames.add(key.className());
+        }
+        return classNames;
+    }
+
+    public synchronized String getIdentifier(int methodId) {
+        MethodKey key = keys.get(methodId);
+        return key.className() + "." + key.name() + key.descriptor();
+    }
+
+    private record MethodKey(String className, String name, String descriptor) {
+    }
+}
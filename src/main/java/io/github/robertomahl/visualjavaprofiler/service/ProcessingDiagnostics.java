@@ -0,0 +1,196 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import com.intellij.openapi.components.Service;
+import java.util.concurrent.TimeUnit;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Timings and counters of the plugin itself, from reading recordings to applying highlighters, so that a slow load can
+ * be pinned down to one of its stages. Each measurement is emitted as a custom JFR event, visible when the IDE is
+ * recorded with Flight Recorder, and added up into a summary for bug reports.
+ */
+@Service(Service.Level.PROJECT)
+public final class ProcessingDiagnostics {
+
+    private final Totals reads = new Totals();
+    private long readEvents = 0;
+
+    private final Totals scopeResolutions = new Totals();
+    private long classesRequested = 0;
+    private long classesCached = 0;
+    private final Totals readActionWaits = new Totals();
+
+    private final Totals highlightBatches = new Totals();
+    private final Totals highlightLatencies = new Totals();
+    private long highlightersAdded = 0;
+    private long highlightersRemoved = 0;
+
+    synchronized void recordRead(int recordings, long events, long nanos) {
+        RecordingReadEvent event = new RecordingReadEvent();
+        event.recordings = recordings;
+        event.events = events;
+        event.readTime = nanos;
+        event.commit();
+
+        reads.add(nanos);
+        readEvents += events;
+    }
+
+    synchronized void recordScopeResolution(int classes, int cachedClasses, long readActionWaitNanos, long nanos) {
+        ScopeResolutionEvent event = new ScopeResolutionEvent();
+        event.classes = classes;
+        event.cachedClasses = cachedClasses;
+        event.readActionWait = readActionWaitNanos;
+        event.resolutionTime = nanos;
+        event.commit();
+
+        scopeResolutions.add(nanos);
+        classesRequested += classes;
+        classesCached += cachedClasses;
+        if (classes > cachedClasses)
+            readActionWaits.add(readActionWaitNanos);
+    }
+
+    /**
+     * Records the highlighters of one editor being brought in line with its plan on the EDT.
+     *
+     * @param latencyNanos time from requesting the highlights to applying them, which includes planning them in a
+     *                     read action
+     * @param nanos        time spent on the EDT applying them
+     */
+    public synchronized void recordHighlightBatch(int added, int removed, long latencyNanos, long nanos) {
+        HighlightBatchEvent event = new HighlightBatchEvent();
+        event.highlightersAdded = added;
+        event.highlightersRemoved = removed;
+        event.latency = latencyNanos;
+        event.edtTime = nanos;
+        event.commit();
+
+        highlightBatches.add(nanos);
+        highlightLatencies.add(latencyNanos);
+        highlightersAdded += added;
+        highlightersRemoved += removed;
+    }
+
+    public synchronized String getSummary() {
+        double readSeconds = reads.total / 1e9;
+        return String.format("Recordings processed: %d, %d events in %.1f s (%.0f events/s)%n",
+                reads.count, readEvents, readSeconds, readSeconds > 0 ? readEvents / readSeconds : 0.0)
+                + String.format("Scope resolutions: %d, %d classes, %.1f%% from cache, %s total, read action wait %s%n",
+                scopeResolutions.count, classesRequested, classesRequested > 0 ? 100.0 * classesCached / classesRequested : 0.0,
+                scopeResolutions.formatTotal(), readActionWaits.formatAverageAndMax())
+                + String.format("Highlight batches: %d, %d highlighters added, %d removed, EDT time %s, latency %s",
+                highlightBatches.count, highlightersAdded, highlightersRemoved,
+                highlightBatches.formatAverageAndMax(), highlightLatencies.formatAverageAndMax());
+    }
+
+    public synchronized void reset() {
+        reads.clear();
+        readEvents = 0;
+        scopeResolutions.clear();
+        classesRequested = 0;
+        classesCached = 0;
+        readActionWaits.clear();
+        highlightBatches.clear();
+        highlightLatencies.clear();
+        highlightersAdded = 0;
+        highlightersRemoved = 0;
+    }
+
+    private static final class Totals {
+
+        private long count = 0;
+        private long total = 0;
+        private long max = 0;
+
+        void add(long nanos) {
+            count++;
+            total += nanos;
+            max = Math.max(max, nanos);
+        }
+
+        void clear() {
+            count = 0;
+            total = 0;
+            max = 0;
+        }
+
+        String formatTotal() {
+            return formatMillis(total);
+        }
+
+        String formatAverageAndMax() {
+            return count == 0 ? "n/a" : formatMillis(total / count) + " average, " + formatMillis(max) + " max";
+        }
+
+        private static String formatMillis(long nanos) {
+            return String.format("%.1f ms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    @Name("io.github.robertomahl.visualjavaprofiler.RecordingRead")
+    @Label("Recording Read")
+    @Category("Profiler Lens")
+    @Description("JFR recordings processed into results")
+    private static final class RecordingReadEvent extends Event {
+
+        @Label("Recordings")
+        int recordings;
+
+        @Label("Events")
+        @Description("Events routed to the processing methods")
+        long events;
+
+        @Label("Read Time")
+        @Description("Time to read the recordings, including scope resolution")
+        @Timespan
+        long readTime;
+    }
+
+    @Name("io.github.robertomahl.visualjavaprofiler.ScopeResolution")
+    @Label("Scope Resolution")
+    @Category("Profiler Lens")
+    @Description("Classes of a recording looked up in the project")
+    private static final class ScopeResolutionEvent extends Event {
+
+        @Label("Classes")
+        int classes;
+
+        @Label("Cached Classes")
+        int cachedClasses;
+
+        @Label("Read Action Wait")
+        @Timespan
+        long readActionWait;
+
+        @Label("Resolution Time")
+        @Timespan
+        long resolutionTime;
+    }
+
+    @Name("io.github.robertomahl.visualjavaprofiler.HighlightBatch")
+    @Label("Highlight Batch")
+    @Category("Profiler Lens")
+    @Description("Highlighters of an editor applied on the EDT")
+    private static final class HighlightBatchEvent extends Event {
+
+        @Label("Highlighters Added")
+        int highlightersAdded;
+
+        @Label("Highlighters Removed")
+        int highlightersRemoved;
+
+        @Label("Latency")
+        @Timespan
+        long latency;
+
+        @Label("EDT Time")
+        @Timespan
+        long edtTime;
+    }
+}
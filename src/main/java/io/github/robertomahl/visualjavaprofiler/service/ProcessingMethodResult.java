@@ -1,15 +1,42 @@
 package io.github.robertomahl.visualjavaprofiler.service;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Values of a metric per method identifier, and per source line for the methods whose lines are known. The total is
+ * the value of the whole recording, including what was recorded outside of the project.
+ * <p>
+ * Methods are also ranked from the hottest down, by the magnitude of their values, so that the hottest methods can be
+ * told apart with a lookup rather than a scan of the result map.
+ */
 public class ProcessingMethodResult {
 
+    // A hash map node along with its table slot and boxed value
+    private static final long MAP_ENTRY_BYTES = 56;
+    private static final long STRING_OVERHEAD_BYTES = 56;
+
     private final Map<String, Long> resultMap;
     private final long minValue;
     private final long maxValue;
+    private final Map<String, LineValues> lineResultMap;
+    private final long maxLineValue;
+    private final long totalValue;
+
+    private final String[] methodsByRank;
+    // Magnitude of the value of the method of each rank, in descending order
+    private final long[] rankValues;
+    private final Map<String, Integer> rankByMethod;
 
     public ProcessingMethodResult(Map<String, Long> resultMap) {
+        this(resultMap, Map.of(), resultMap.values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    public ProcessingMethodResult(Map<String, Long> resultMap, Map<String, LineValues> lineResultMap, long totalValue) {
         this.resultMap = resultMap;
+        this.lineResultMap = lineResultMap;
+        this.totalValue = totalValue;
 
         if (resultMap.isEmpty()) {
             this.minValue = 0L;
@@ -24,6 +51,43 @@ public class ProcessingMethodResult {
             this.minValue = min;
             this.maxValue = max;
         }
+
+        long maxLine = 0L;
+        for (LineValues lineValues : lineResultMap.values()) {
+            for (int i = 0; i < lineValues.size(); i++) {
+                maxLine = Math.max(maxLine, lineValues.getValue(i));
+            }
+        }
+        this.maxLineValue = maxLine;
+
+        // Magnitudes are copied out of the map once, so that comparisons only index arrays
+        String[] methods = new String[resultMap.size()];
+        long[] magnitudes = new long[methods.length];
+        int index = 0;
+        for (Map.Entry<String, Long> entry : resultMap.entrySet()) {
+            methods[index] = entry.getKey();
+            magnitudes[index] = Math.abs(entry.getValue());
+            index++;
+        }
+
+        Integer[] order = new Integer[methods.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // Ties are broken by identifier, so that ranks do not depend on the iteration order of the map
+        Arrays.sort(order, (left, right) -> {
+            int byMagnitude = Long.compare(magnitudes[right], magnitudes[left]);
+            return byMagnitude != 0 ? byMagnitude : methods[left].compareTo(methods[right]);
+        });
+
+        this.methodsByRank = new String[methods.length];
+        this.rankValues = new long[methods.length];
+        this.rankByMethod = new HashMap<>(methods.length * 2);
+        for (int rank = 0; rank < order.length; rank++) {
+            methodsByRank[rank] = methods[order[rank]];
+            rankValues[rank] = magnitudes[order[rank]];
+            rankByMethod.put(methodsByRank[rank], rank);
+        }
     }
 
     public Map<String, Long> getResultMap() {
@@ -37,4 +101,70 @@ public class ProcessingMethodResult {
     public long getMaxValue() {
         return maxValue;
     }
+
+    public boolean hasValues() {
+        return !resultMap.isEmpty();
+    }
+
+    public long getTotalValue() {
+        return totalValue;
+    }
+
+    public Map<String, LineValues> getLineResultMap() {
+        return lineResultMap;
+    }
+
+    public long getMaxLineValue() {
+        return maxLineValue;
+    }
+
+    /**
+     * Returns the largest magnitude of any method value, which is that of the hottest method.
+     */
+    public long getMaxAbsoluteValue() {
+        return rankValues.length == 0 ? 0L : rankValues[0];
+    }
+
+    /**
+     * Returns the rank of a method, 0 being the hottest, or -1 if it has no value.
+     */
+    public int getRank(String methodIdentifier) {
+        Integer rank = rankByMethod.get(methodIdentifier);
+        return rank != null ? rank : -1;
+    }
+
+    public String getMethodAtRank(int rank) {
+        return methodsByRank[rank];
+    }
+
+    /**
+     * Returns the number of methods within the cutoff, which are those ranked below it.
+     */
+    public int getCutoffRank(HotMethodCutoff hotMethodCutoff) {
+        return hotMethodCutoff.getCount(methodsByRank.length);
+    }
+
+    /**
+     * Scales the magnitude of a value logarithmically between 0 and 1 relative to the hottest method, so that methods
+     * an order of magnitude cooler than it still stand out from those without values.
+     */
+    public double getIntensity(long value) {
+        long maxAbsoluteValue = getMaxAbsoluteValue();
+        return maxAbsoluteValue == 0 ? 0.0 : Math.log1p(Math.abs(value)) / Math.log1p(maxAbsoluteValue);
+    }
+
+    /**
+     * Returns roughly how many bytes of heap the result takes, counting its method identifiers as its own.
+     */
+    long getEstimatedSize() {
+        long size = 12L * methodsByRank.length;
+        for (String methodIdentifier : methodsByRank) {
+            // Each method is both in the result map and in the rank map
+            size += 2 * MAP_ENTRY_BYTES + STRING_OVERHEAD_BYTES + methodIdentifier.length();
+        }
+        for (LineValues lineValues : lineResultMap.values()) {
+            size += MAP_ENTRY_BYTES + lineValues.getEstimatedSize();
+        }
+        return size;
+    }
 }
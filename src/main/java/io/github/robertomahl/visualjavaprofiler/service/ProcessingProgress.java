@@ -0,0 +1,37 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.util.Map;
+
+/**
+ * Receives the progress of reading recordings, and may abort the read by throwing from {@link #checkCanceled()}.
+ * Methods may be called from any of the threads processing the recording.
+ */
+interface ProcessingProgress {
+
+    ProcessingProgress NONE = new ProcessingProgress() {
+    };
+
+    /**
+     * Called regularly while events are read. Whatever it throws is rethrown by the read, which stops shortly after.
+     */
+    default void checkCanceled() {
+    }
+
+    default void setFraction(double fraction) {
+    }
+
+    /**
+     * Whether {@link #partialResultsAvailable} is of any use, since taking snapshots of the events read so far costs a
+     * merge of every aggregator.
+     */
+    default boolean acceptsPartialResults() {
+        return false;
+    }
+
+    /**
+     * Called on a background thread of its own with a snapshot of the events aggregated so far, which is not updated
+     * afterwards. Never called once the read has returned.
+     */
+    default void partialResultsAvailable(Map<ProfilingMetricProcessingMethod, EventAggregator> aggregators, MethodTable methodTable) {
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of processed results, keyed by {@link RecordingFingerprint} and stored with the {@link ResultScope}
+ * they were computed with. Failures are logged and otherwise treated as cache misses, since the recording can always be
+ * processed again.
+ */
+class ProcessingResultCache {
+
+    private static final Logger LOG = Logger.getInstance(ProcessingResultCache.class);
+
+    private static final String FILE_EXTENSION = ".bin";
+    private static final int MAX_CACHED_RECORDINGS = 20;
+
+    private final Path directory;
+
+    ProcessingResultCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the cached results of a recording, unless resolving its classes again puts other ones in scope than
+     * those the results were computed with.
+     */
+    CachedResults get(RecordingFingerprint fingerprint, Function<Set<String>, Set<String>> scopeResolver) {
+        Path path = getPath(fingerprint);
+        if (!Files.isRegularFile(path))
+            return null;
+
+        try {
+            // Only the scope is read up front, so that stale results are not read at all
+            ResultScope resultScope = ProcessingResultFile.readScope(path);
+            if (resultScope == null || !resultScope.isCurrent(scopeResolver))
+                return null;
+
+            Map<ProfilingMetric, ProcessingMethodResult> resultsPerMetric = ProcessingResultFile.read(path);
+            // Results cached before a metric was added are missing it, so the recording needs processing again
+            if (!resultsPerMetric.keySet().containsAll(EnumSet.allOf(ProfilingMetric.class)))
+                return null;
+
+            // Touched so that eviction removes the least recently used results first
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            return new CachedResults(resultsPerMetric, resultScope);
+        } catch (IOException ex) {
+            LOG.warn("Discarding unreadable cached results " + path, ex);
+            delete(path);
+            return null;
+        }
+    }
+
+    void put(RecordingFingerprint fingerprint, Map<ProfilingMetric, ProcessingMethodResult> resultsPerMetric, ResultScope resultScope) {
+        try {
+            Files.createDirectories(directory);
+            // Stale results of the same recording are replaced, since they share the fingerprint
+            ProcessingResultFile.write(getPath(fingerprint), resultsPerMetric, resultScope);
+            evictOldest();
+        } catch (IOException ex) {
+            LOG.warn("Could not cache results of " + fingerprint, ex);
+        }
+    }
+
+    private void evictOldest() throws IOException {
+        List<Path> cachedResults;
+        try (Stream<Path> files = Files.list(directory)) {
+            cachedResults = files
+                    .filter(path -> path.getFileName().toString().endsWith(FILE_EXTENSION))
+                    .sorted(Comparator.comparing(this::getLastModifiedTime).reversed())
+                    .toList();
+        }
+        cachedResults.stream().skip(MAX_CACHED_RECORDINGS).forEach(this::delete);
+    }
+
+    private FileTime getLastModifiedTime(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException ex) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            LOG.warn("Could not delete cached results " + path, ex);
+        }
+    }
+
+    private Path getPath(RecordingFingerprint fingerprint) {
+        return directory.resolve(fingerprint.toFileName() + FILE_EXTENSION);
+    }
+
+    record CachedResults(Map<ProfilingMetric, ProcessingMethodResult> resultsPerMetric, ResultScope resultScope) {
+    }
+}
@@ -0,0 +1,218 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact binary form of the processed results of a recording.
+ * <p>
+ * Layout: magic and version, then the {@link ResultScope} as a class count followed by (class name, in scope) pairs, or
+ * -1 if it is unknown, then a table of every distinct method identifier, then for each metric its name and total
+ * followed by (identifier index, value) pairs and by the line values of each method, as (identifier index, line count) followed
+ * by (line, value) pairs. Identifiers shared by several metrics are therefore stored once.
+ */
+public final class ProcessingResultFile {
+
+    private static final int MAGIC = 0x504C5253; // "PLRS"
+    private static final int VERSION = 4;
+    // Written before the scope was recorded, which is read as unknown
+    private static final int VERSION_WITHOUT_SCOPE = 3;
+
+    private ProcessingResultFile() {
+    }
+
+    public static void write(Path path, Map<ProfilingMetric, ProcessingMethodResult> resultsPerMetric) throws IOException {
+        write(path, resultsPerMetric, null);
+    }
+
+    /**
+     * Writes results along with the scope they were computed with, or null if it is not known.
+     */
+    static void write(Path path, Map<ProfilingMetric, ProcessingMethodResult> resultsPerMetric, ResultScope resultScope) throws IOException {
+        Map<String, Integer> identifierIndexes = new LinkedHashMap<>();
+        resultsPerMetric.values().forEach(result -> result.getResultMap().keySet().forEach(identifier ->
+                identifierIndexes.putIfAbsent(identifier, identifierIndexes.size())));
+
+        // Written aside and moved into place, so that readers never see a partially written file
+        Path temporaryPath = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            if (resultScope == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(resultScope.classNames().size());
+                for (String className : resultScope.classNames()) {
+                    writeString(out, className);
+                    out.writeBoolean(resultScope.classesInScope().contains(className));
+                }
+            }
+
+            out.writeInt(identifierIndexes.size());
+            for (String identifier : identifierIndexes.keySet()) {
+                writeString(out, identifier);
+            }
+
+            out.writeInt(resultsPerMetric.size());
+            for (Map.Entry<ProfilingMetric, ProcessingMethodResult> entry : resultsPerMetric.entrySet()) {
+                writeString(out, entry.getKey().name());
+                out.writeLong(entry.getValue().getTotalValue());
+                Map<String, Long> resultMap = entry.getValue().getResultMap();
+                out.writeInt(resultMap.size());
+                for (Map.Entry<String, Long> result : resultMap.entrySet()) {
+                    out.writeInt(identifierIndexes.get(result.getKey()));
+                    out.writeLong(result.getValue());
+                }
+
+                Map<String, LineValues> lineResultMap = entry.getValue().getLineResultMap();
+                out.writeInt(lineResultMap.size());
+                for (Map.Entry<String, LineValues> lineResult : lineResultMap.entrySet()) {
+                    LineValues lineValues = lineResult.getValue();
+                    out.writeInt(identifierIndexes.get(lineResult.getKey()));
+                    out.writeInt(lineValues.size());
+                    for (int j = 0; j < lineValues.size(); j++) {
+                        out.writeInt(lineValues.getLine(j));
+                        out.writeLong(lineValues.getValue(j));
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException | Error ex) {
+            Files.deleteIfExists(temporaryPath);
+            throw ex;
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Tells result files apart from recordings by their magic number, whatever their file name.
+     */
+    public static boolean isResultFile(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads only the scope that the results of a file were computed with, or null if it is not known.
+     */
+    static ResultScope readScope(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return readHeader(buffer, path);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException ex) {
+            throw new IOException("Truncated result file: " + path, ex);
+        }
+    }
+
+    public static Map<ProfilingMetric, ProcessingMethodResult> read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            readHeader(buffer, path);
+
+            int identifierCount = buffer.getInt();
+            List<String> identifiers = new ArrayList<>(identifierCount);
+            for (int i = 0; i < identifierCount; i++) {
+                identifiers.add(readString(buffer));
+            }
+
+            Map<ProfilingMetric, ProcessingMethodResult> resultsPerMetric = new EnumMap<>(ProfilingMetric.class);
+            int metricCount = buffer.getInt();
+            for (int i = 0; i < metricCount; i++) {
+                String metricName = readString(buffer);
+                long totalValue = buffer.getLong();
+                int resultCount = buffer.getInt();
+                Map<String, Long> resultMap = new HashMap<>(resultCount * 2);
+                for (int j = 0; j < resultCount; j++) {
+                    resultMap.put(identifiers.get(buffer.getInt()), buffer.getLong());
+                }
+
+                int lineResultCount = buffer.getInt();
+                Map<String, LineValues> lineResultMap = new HashMap<>(lineResultCount * 2);
+                for (int j = 0; j < lineResultCount; j++) {
+                    String identifier = identifiers.get(buffer.getInt());
+                    int[] lines = new int[buffer.getInt()];
+                    long[] values = new long[lines.length];
+                    for (int k = 0; k < lines.length; k++) {
+                        lines[k] = buffer.getInt();
+                        values[k] = buffer.getLong();
+                    }
+                    lineResultMap.put(identifier, new LineValues(lines, values));
+                }
+
+                // Metrics that no longer exist are skipped rather than failing the whole file
+                ProfilingMetric profilingMetric = findMetric(metricName);
+                if (profilingMetric != null)
+                    resultsPerMetric.put(profilingMetric, new ProcessingMethodResult(resultMap, lineResultMap, totalValue));
+            }
+            return resultsPerMetric;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException ex) {
+            throw new IOException("Truncated result file: " + path, ex);
+        }
+    }
+
+    private static ResultScope readHeader(MappedByteBuffer buffer, Path path) throws IOException {
+        if (buffer.getInt() != MAGIC)
+            throw new IOException("Unsupported result file: " + path);
+        int version = buffer.getInt();
+        if (version == VERSION_WITHOUT_SCOPE)
+            return null;
+        if (version != VERSION)
+            throw new IOException("Unsupported result file: " + path);
+
+        int classCount = buffer.getInt();
+        if (classCount < 0)
+            return null;
+
+        Set<String> classNames = new HashSet<>(classCount * 2);
+        Set<String> classesInScope = new HashSet<>();
+        for (int i = 0; i < classCount; i++) {
+            String className = readString(buffer);
+            classNames.add(className);
+            if (buffer.get() != 0)
+                classesInScope.add(className);
+        }
+        return new ResultScope(classNames, classesInScope);
+    }
+
+    private static ProfilingMetric findMetric(String metricName) {
+        for (ProfilingMetric profilingMetric : ProfilingMetric.values()) {
+            if (profilingMetric.name().equals(metricName))
+                return profilingMetric;
+        }
+        return null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the results of recently loaded recordings in memory in front of the {@link ProcessingResultCache}, so that
+ * switching back to one of them skips both processing and reading the cache file. Results are held as
+ * {@link CompactResults} within a budget of bytes, beyond which the least recently used recordings are dropped and
+ * have to be read from the cache again. What the processing service holds on to besides, such as the index of the
+ * active recording and the results it shows, counts towards the same budget as pinned bytes.
+ * <p>
+ * Like the cache, results are only returned while their classes resolve to the same {@link ResultScope} they were
+ * computed with. Scope is resolved outside of the lock of the store, since it may wait for indexing to finish.
+ */
+class ProcessingResultStore {
+
+    private final ProcessingResultCache processingResultCache;
+    private final LongSupplier budgetBytes;
+
+    // In access order, so that the first entry is the least recently used one
+    private final LinkedHashMap<RecordingFingerprint, StoredResults> storedResults = new LinkedHashMap<>(16, 0.75f, true);
+    private long storedBytes = 0;
+    private long pinnedBytes = 0;
+
+    ProcessingResultStore(ProcessingResultCache processingResultCache, LongSupplier budgetBytes) {
+        this.processingResultCache = processingResultCache;
+        this.budgetBytes = budgetBytes;
+    }
+
+    Map<ProfilingMetric, ProcessingMethodResult> get(RecordingFingerprint fingerprint, Path recording,
+                                                     Function<Set<String>, Set<String>> scopeResolver) {
+        StoredResults stored;
+        synchronized (this) {
+            stored = storedResults.get(fingerprint);
+        }
+        if (stored != null) {
+            if (stored.resultScope().isCurrent(scopeResolver))
+                return stored.results().toResults();
+
+            // The cached results were stored along with these, so they are just as stale
+            synchronized (this) {
+                if (storedResults.remove(fingerprint, stored))
+                    storedBytes -= stored.getEstimatedSize();
+            }
+            return null;
+        }
+
+        ProcessingResultCache.CachedResults cachedResults = processingResultCache.get(fingerprint, scopeResolver);
+        if (cachedResults == null)
+            return null;
+
+        synchronized (this) {
+            store(fingerprint, recording, cachedResults.resultsPerMetric(), cachedResults.resultScope());
+        }
+        return cachedResults.resultsPerMetric();
+    }
+
+    synchronized void put(RecordingFingerprint fingerprint, Path recording, Map<ProfilingMetric, ProcessingMethodResult> resultsPerMetric,
+                          ResultScope resultScope) {
+        processingResultCache.put(fingerprint, resultsPerMetric, resultScope);
+        store(fingerprint, recording, resultsPerMetric, resultScope);
+    }
+
+    /**
+     * Sets how many bytes are held outside of the store, dropping stored results until both fit within the budget.
+     */
+    synchronized void setPinnedBytes(long pinnedBytes) {
+        this.pinnedBytes = pinnedBytes;
+        evict();
+    }
+
+    /**
+     * Returns the recordings held in memory, most recently used first.
+     */
+    synchronized List<Path> getRecordings() {
+        List<Path> recordings = new ArrayList<>(storedResults.size());
+        storedResults.values().forEach(stored -> recordings.add(stored.recording()));
+        Collections.reverse(recordings);
+        return recordings;
+    }
+
+    private void store(RecordingFingerprint fingerprint, Path recording, Map<ProfilingMetric, ProcessingMethodResult> resultsPerMetric,
+                       ResultScope resultScope) {
+        StoredResults stored = new StoredResults(recording, CompactResults.of(resultsPerMetric), resultScope);
+        StoredResults previous = storedResults.put(fingerprint, stored);
+        if (previous != null)
+            storedBytes -= previous.getEstimatedSize();
+        storedBytes += stored.getEstimatedSize();
+        evict();
+    }
+
+    private void evict() {
+        // The budget is read on every change so that it applies without a restart. Recordings larger than what is left
+        // of the budget are not kept at all.
+        long budget = budgetBytes.getAsLong() - pinnedBytes;
+        Iterator<StoredResults> leastRecentlyUsed = storedResults.values().iterator();
+        while (storedBytes > budget && leastRecentlyUsed.hasNext()) {
+            storedBytes -= leastRecentlyUsed.next().getEstimatedSize();
+            leastRecentlyUsed.remove();
+        }
+    }
+
+    private record StoredResults(Path recording, CompactResults results, ResultScope resultScope) {
+
+        long getEstimatedSize() {
+            return results.getEstimatedSize() + resultScope.getEstimatedSize();
+        }
+    }
+}
@@ -1,18 +1,37 @@
 package io.github.robertomahl.visualjavaprofiler.service;
 
-import com.intellij.openapi.project.Project;
-import jdk.jfr.consumer.RecordingFile;
-
 public enum ProfilingMetric {
-    METHOD_RUN_COUNT(new MethodRunCountProcessingMethod());
+    METHOD_RUN_COUNT("Method Run Count (Self)", ProcessingMethods.EXECUTION_SAMPLES, Attribution.SELF),
+    METHOD_INCLUSIVE_RUN_COUNT("Method Run Count (Inclusive)", ProcessingMethods.EXECUTION_SAMPLES, Attribution.INCLUSIVE),
+    ALLOCATED_BYTES("Allocated Bytes", ProcessingMethods.ALLOCATIONS, Attribution.SELF),
+    BLOCKING_TIME("Blocking Time", ProcessingMethods.BLOCKING, Attribution.SELF);
 
+    private final String displayName;
     private final ProfilingMetricProcessingMethod processingMethod;
+    private final Attribution attribution;
 
-    ProfilingMetric(ProfilingMetricProcessingMethod processingMethod) {
+    ProfilingMetric(String displayName, ProfilingMetricProcessingMethod processingMethod, Attribution attribution) {
+        this.displayName = displayName;
         this.processingMethod = processingMethod;
+        this.attribution = attribution;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public ProfilingMetricProcessingMethod getProcessingMethod() {
+        return processingMethod;
+    }
+
+    public Attribution getAttribution() {
+        return attribution;
     }
 
-    public ProcessingMethodResult compute(Project project, RecordingFile file) {
-        return processingMethod.compute(project, file);
+    // Metrics sharing a processing method share its aggregation, so they cost a single pass over the recording
+    private static final class ProcessingMethods {
+        private static final ProfilingMetricProcessingMethod EXECUTION_SAMPLES = new MethodRunCountProcessingMethod();
+        private static final ProfilingMetricProcessingMethod ALLOCATIONS = new AllocationProcessingMethod();
+        private static final ProfilingMetricProcessingMethod BLOCKING = new BlockingTimeProcessingMethod();
     }
 }
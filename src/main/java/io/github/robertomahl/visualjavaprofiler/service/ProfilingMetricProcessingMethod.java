@@ -1,11 +1,27 @@
 package io.github.robertomahl.visualjavaprofiler.service;
 
-import com.intellij.openapi.project.Project;
-import jdk.jfr.consumer.RecordingFile;
+import java.util.Set;
 
-@FunctionalInterface
 public interface ProfilingMetricProcessingMethod {
 
-    ProcessingMethodResult compute(Project project, RecordingFile file);
+    /**
+     * Names of the JFR event types this processing method subscribes to, e.g. {@code jdk.ExecutionSample}.
+     */
+    Set<String> getEventTypes();
+
+    /**
+     * Creates the state for one worker or chunk of a read. All aggregators of the same read share the given
+     * {@link MethodTable}, so their counters can be merged by method ID.
+     */
+    default EventAggregator createAggregator(MethodTable methodTable) {
+        return createAggregator(methodTable, true);
+    }
+
+    /**
+     * Creates the state for one worker or chunk of a read, which keeps its events apart by second and thread group only
+     * if partitioned. Results of aggregators without partitions cannot be filtered, but their memory does not grow with
+     * the length of the recording.
+     */
+    EventAggregator createAggregator(MethodTable methodTable, boolean partitioned);
 
 }
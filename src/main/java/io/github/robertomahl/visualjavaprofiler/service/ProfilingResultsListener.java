@@ -0,0 +1,14 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import com.intellij.util.messages.Topic;
+
+/**
+ * Notified, on the publishing thread, whenever the profiling results of a project are replaced.
+ */
+public interface ProfilingResultsListener {
+
+    Topic<ProfilingResultsListener> TOPIC = Topic.create("Profiler Lens profiling results", ProfilingResultsListener.class);
+
+    void profilingResultsChanged();
+
+}
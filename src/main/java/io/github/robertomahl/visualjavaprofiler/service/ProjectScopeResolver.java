@@ -0,0 +1,136 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootEvent;
+import com.intellij.openapi.roots.ModuleRootListener;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiDirectory;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiIdentifier;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.PsiTreeChangeAdapter;
+import com.intellij.psi.PsiTreeChangeEvent;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.ProjectScope;
+import com.intellij.psi.util.ClassUtil;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Resolves whether classes found in a recording belong to the project, caching the answers for the lifetime of the
+ * project. The cache is dropped whenever classes, files or module roots change.
+ */
+@Service(Service.Level.PROJECT)
+public final class ProjectScopeResolver implements Disposable {
+
+    private final Project project;
+    private final Map<String, Boolean> classesInProjectScope = new ConcurrentHashMap<>();
+
+    ProjectScopeResolver(Project project) {
+        this.project = project;
+
+        project.getMessageBus().connect(this).subscribe(ModuleRootListener.TOPIC, new ModuleRootListener() {
+            @Override
+            public void rootsChanged(@NotNull ModuleRootEvent event) {
+                invalidate();
+            }
+        });
+        PsiManager.getInstance(project).addPsiTreeChangeListener(new ClassStructureListener(), this);
+    }
+
+    /**
+     * Returns the subset of the given class names that belong to the project. Classes that are not cached yet are all
+     * resolved within a single read action.
+     */
+    public Set<String> resolve(Collection<String> classNames) {
+        List<String> unresolved = classNames.stream()
+                .filter(className -> !classesInProjectScope.containsKey(className))
+                .toList();
+
+        long startNanos = System.nanoTime();
+        // Time until the read action first runs, which is spent waiting on write actions or for indexing to finish
+        AtomicLong readActionStartNanos = new AtomicLong(0);
+        if (!unresolved.isEmpty()) {
+            ReadAction.nonBlocking(() -> {
+                        readActionStartNanos.compareAndSet(0, System.nanoTime());
+                        PsiManager manager = PsiManager.getInstance(project);
+                        GlobalSearchScope scope = ProjectScope.getProjectScope(project);
+                        // Answers are cached as they come, so a restarted read action resumes where it stopped
+                        for (String className : unresolved) {
+                            classesInProjectScope.computeIfAbsent(className, key ->
+                                    ClassUtil.findPsiClass(manager, key.replace('/', '.'), null, true, scope) != null);
+                        }
+                    })
+                    .inSmartMode(project)
+                    .executeSynchronously();
+        }
+
+        Set<String> inProjectScope = new HashSet<>();
+        for (String className : classNames) {
+            if (Boolean.TRUE.equals(classesInProjectScope.get(className)))
+                inProjectScope.add(className);
+        }
+
+        long endNanos = System.nanoTime();
+        long readActionWaitNanos = readActionStartNanos.get() == 0 ? 0 : readActionStartNanos.get() - startNanos;
+        project.getService(ProcessingDiagnostics.class).recordScopeResolution(
+                classNames.size(), classNames.size() - unresolved.size(), readActionWaitNanos, endNanos - startNanos);
+        return inProjectScope;
+    }
+
+    public void invalidate() {
+        classesInProjectScope.clear();
+    }
+
+    @Override
+    public void dispose() {
+        invalidate();
+    }
+
+    private class ClassStructureListener extends PsiTreeChangeAdapter {
+
+        @Override
+        public void childAdded(@NotNull PsiTreeChangeEvent event) {
+            invalidateIfStructural(event.getParent(), event.getChild());
+        }
+
+        @Override
+        public void childRemoved(@NotNull PsiTreeChangeEvent event) {
+            invalidateIfStructural(event.getParent(), event.getChild());
+        }
+
+        @Override
+        public void childReplaced(@NotNull PsiTreeChangeEvent event) {
+            invalidateIfStructural(event.getParent(), event.getOldChild());
+        }
+
+        @Override
+        public void childMoved(@NotNull PsiTreeChangeEvent event) {
+            invalidateIfStructural(event.getParent(), event.getChild());
+        }
+
+        @Override
+        public void propertyChanged(@NotNull PsiTreeChangeEvent event) {
+            if (PsiTreeChangeEvent.PROP_FILE_NAME.equals(event.getPropertyName())
+                    || PsiTreeChangeEvent.PROP_DIRECTORY_NAME.equals(event.getPropertyName()))
+                invalidate();
+        }
+
+        private void invalidateIfStructural(PsiElement parent, PsiElement child) {
+            // Only classes, files and directories coming or going (or a class being renamed) affect the answers
+            if (child instanceof PsiClass || child instanceof PsiFile || child instanceof PsiDirectory
+                    || (parent instanceof PsiClass && child instanceof PsiIdentifier))
+                invalidate();
+        }
+    }
+}
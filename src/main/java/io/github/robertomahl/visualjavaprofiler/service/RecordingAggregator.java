@@ -0,0 +1,33 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Processes recordings without an IDE, such as on CI nodes, where project scope cannot be resolved through PSI and is
+ * given up front instead. The results can be written with {@link ProcessingResultFile} and opened by the plugin.
+ */
+public final class RecordingAggregator {
+
+    private RecordingAggregator() {
+    }
+
+    /**
+     * Aggregates the events of all recordings into a single result per metric.
+     */
+    public static Map<ProfilingMetric, ProcessingMethodResult> aggregate(List<Path> recordings, Predicate<String> isClassInScope) throws IOException {
+        return aggregateWeighted(recordings.stream().map(WeightedRecording::of).toList(), isClassInScope);
+    }
+
+    /**
+     * Aggregates the events of all recordings, scaled by their weights, into a single result per metric.
+     */
+    public static Map<ProfilingMetric, ProcessingMethodResult> aggregateWeighted(List<WeightedRecording> recordings, Predicate<String> isClassInScope)
+            throws IOException {
+        return RecordingIndex.read(recordings, methodTable -> MethodScope.resolve(methodTable, isClassInScope), ProcessingProgress.NONE)
+                .getResults(ResultFilter.ALL);
+    }
+}
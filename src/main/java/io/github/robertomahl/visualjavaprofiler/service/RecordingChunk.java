@@ -0,0 +1,98 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A self-contained chunk of a JFR recording. Every chunk carries its own metadata and constant pools, so chunks can be
+ * parsed independently of each other.
+ */
+record RecordingChunk(long offset, long size, long startNanos, long durationNanos) {
+
+    private static final int MAGIC = 0x464C5200; // "FLR\0"
+    // Magic, major and minor version, chunk size, constant pool and metadata offsets, start time and duration
+    private static final int HEADER_PREFIX_SIZE = 48;
+
+    /**
+     * Locates the chunk boundaries of a recording by walking the chunk headers. Anything that does not look like a
+     * complete chunk, e.g. a chunk that is still being written, is returned as a single trailing chunk and left for the
+     * JFR parser to judge.
+     */
+    static List<RecordingChunk> locate(Path recording) throws IOException {
+        List<RecordingChunk> chunks = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(recording, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_PREFIX_SIZE);
+
+            long offset = 0;
+            while (offset < fileSize) {
+                header.clear();
+                boolean hasHeader = readHeader(channel, offset, header);
+                long chunkSize = hasHeader ? header.getLong(8) : 0;
+
+                if (chunkSize < HEADER_PREFIX_SIZE || chunkSize > fileSize - offset) {
+                    // A chunk that is still being written has no duration yet
+                    chunks.add(hasHeader
+                            ? new RecordingChunk(offset, fileSize - offset, header.getLong(32), 0)
+                            : new RecordingChunk(offset, fileSize - offset, 0, 0));
+                    break;
+                }
+                chunks.add(new RecordingChunk(offset, chunkSize, header.getLong(32), header.getLong(40)));
+                offset += chunkSize;
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Estimates how far into this chunk an event recorded at the given time is. Events are written roughly in time
+     * order, so this tracks the progress of reading the chunk without access to the parser's file position.
+     */
+    double getProgress(Instant time) {
+        if (durationNanos <= 0)
+            return 0.0;
+
+        long elapsedNanos = (time.getEpochSecond() * 1_000_000_000L + time.getNano()) - startNanos;
+        return Math.min(1.0, Math.max(0.0, (double) elapsedNanos / durationNanos));
+    }
+
+    private static boolean readHeader(FileChannel channel, long offset, ByteBuffer header) throws IOException {
+        while (header.hasRemaining()) {
+            if (channel.read(header, offset + header.position()) < 0)
+                return false;
+        }
+        return header.getInt(0) == MAGIC;
+    }
+
+    /**
+     * Copies this chunk into a temporary file of its own, since {@link jdk.jfr.consumer.RecordingFile} can only open
+     * whole files. The caller is responsible for deleting it.
+     */
+    Path extract(Path recording) throws IOException {
+        Path chunkFile = Files.createTempFile("profiler-lens-chunk", ".jfr");
+
+        try (FileChannel source = FileChannel.open(recording, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(chunkFile, StandardOpenOption.WRITE)) {
+            long transferred = 0;
+            while (transferred < size) {
+                long count = source.transferTo(offset + transferred, size - transferred, target);
+                if (count <= 0)
+                    throw new EOFException("Unexpected end of JFR chunk at offset " + offset);
+                transferred += count;
+            }
+        } catch (IOException ex) {
+            Files.deleteIfExists(chunkFile);
+            throw ex;
+        }
+        return chunkFile;
+    }
+}
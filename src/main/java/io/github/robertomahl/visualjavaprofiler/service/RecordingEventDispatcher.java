@@ -0,0 +1,305 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Reads a recording once and routes each event, by event type, to every subscribed
+ * {@link ProfilingMetricProcessingMethod}. Adding a processing method therefore costs no extra parse of the recording.
+ * <p>
+ * Several recordings, or recordings made of several chunks, are parsed file by file or chunk by chunk on a thread pool,
+ * while single-chunk recordings are streamed through a {@link RecordingEventPipeline}. Either way, aggregators are
+ * merged as soon as their events have been read, so that partial results are available long before the whole recording
+ * is.
+ */
+class RecordingEventDispatcher {
+
+    private static final long SNAPSHOT_INTERVAL_NANOS = 2_000_000_000L;
+    private static final int CANCELLATION_CHECK_INTERVAL_EVENTS = 1024;
+    private static final long CANCELLATION_POLL_MILLIS = 100;
+
+    private final List<ProfilingMetricProcessingMethod> subscribers;
+    private final Map<String, List<ProfilingMetricProcessingMethod>> subscribersByEventType;
+    private final WorkerPools workerPools;
+    private final LongAdder routedEvents = new LongAdder();
+
+    RecordingEventDispatcher(Collection<ProfilingMetricProcessingMethod> processingMethods) {
+        this(processingMethods, WorkerPools.PLAIN);
+    }
+
+    RecordingEventDispatcher(Collection<ProfilingMetricProcessingMethod> processingMethods, WorkerPools workerPools) {
+        this.workerPools = workerPools;
+        this.subscribers = List.copyOf(new LinkedHashSet<>(processingMethods));
+        this.subscribersByEventType = new HashMap<>();
+        for (ProfilingMetricProcessingMethod subscriber : subscribers) {
+            for (String eventType : subscriber.getEventTypes()) {
+                subscribersByEventType.computeIfAbsent(eventType, key -> new ArrayList<>()).add(subscriber);
+            }
+        }
+    }
+
+    Map<ProfilingMetricProcessingMethod, EventAggregator> dispatch(Path recording, MethodTable methodTable) throws IOException {
+        Map<ProfilingMetricProcessingMethod, EventAggregator> aggregators = createAggregators(methodTable);
+        dispatch(List.of(WeightedRecording.of(recording)), methodTable, aggregators, ProcessingProgress.NONE);
+        return aggregators;
+    }
+
+    /**
+     * Reads recordings into the given aggregators. Partial results are offered at most once per
+     * {@link #SNAPSHOT_INTERVAL_NANOS}.
+     * <p>
+     * A single recording is read with all cores, and its progress reported by chunk size for recordings of several
+     * chunks, or by event time within a single chunk. Several recordings are read one worker per file instead, and their
+     * progress reported by file. Either way, each worker's aggregators are merged as soon as it is done, so memory
+     * depends on the number of distinct stacks rather than on the number of recordings.
+     */
+    void dispatch(List<WeightedRecording> recordings,
+                  MethodTable methodTable,
+                  Map<ProfilingMetricProcessingMethod, EventAggregator> aggregators,
+                  ProcessingProgress progress) throws IOException {
+        Accumulator accumulator = new Accumulator(aggregators, methodTable, progress);
+
+        try {
+            if (recordings.size() == 1) {
+                dispatch(recordings.get(0), accumulator);
+            } else {
+                dispatchInParallel(recordings, recording -> 1L, recording -> accumulator.add(
+                        dispatchFile(methodTable, recording.path(), progress), recording.weight()), progress);
+            }
+        } finally {
+            accumulator.close();
+        }
+        progress.setFraction(1.0);
+    }
+
+    private void dispatch(WeightedRecording recording, Accumulator accumulator) throws IOException {
+        List<RecordingChunk> chunks = RecordingChunk.locate(recording.path());
+        MethodTable methodTable = accumulator.methodTable;
+        ProcessingProgress progress = accumulator.progress;
+
+        if (chunks.size() > 1) {
+            dispatchInParallel(chunks, RecordingChunk::size, chunk -> accumulator.add(
+                    dispatchChunk(methodTable, recording.path(), chunk, progress), recording.weight()), progress);
+            return;
+        }
+
+        try (RecordingFile recordingFile = new RecordingFile(recording.path())) {
+            new RecordingEventPipeline(workerPools).run(
+                    recordingFile,
+                    event -> subscribersByEventType.containsKey(event.getEventType().getName()),
+                    () -> createAggregators(methodTable),
+                    this::route,
+                    state -> accumulator.add(state, recording.weight()),
+                    event -> {
+                        progress.checkCanceled();
+                        if (!chunks.isEmpty())
+                            progress.setFraction(chunks.get(0).getProgress(event.getStartTime()));
+                    });
+        }
+    }
+
+    /**
+     * Dispatches each part on a worker of its own, reporting progress by the size of the parts done.
+     */
+    private <T> void dispatchInParallel(List<T> parts, ToLongFunction<T> sizeOf, PartDispatcher<T> partDispatcher, ProcessingProgress progress)
+            throws IOException {
+        ExecutorService executor = workerPools.create("Profiler Lens JFR Readers",
+                Math.min(parts.size(), Runtime.getRuntime().availableProcessors()));
+        List<Future<T>> workers = new ArrayList<>(parts.size());
+        try {
+            CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+            long totalSize = 0;
+            for (T part : parts) {
+                workers.add(completionService.submit(() -> {
+                    partDispatcher.dispatch(part);
+                    return part;
+                }));
+                totalSize += sizeOf.applyAsLong(part);
+            }
+
+            long completedSize = 0;
+            for (int i = 0; i < parts.size(); i++) {
+                Future<T> completed;
+                while ((completed = completionService.poll(CANCELLATION_POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                    progress.checkCanceled();
+                }
+                completedSize += sizeOf.applyAsLong(completed.get());
+                progress.setFraction((double) completedSize / totalSize);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while processing JFR files");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException ioException)
+                throw ioException;
+            if (cause instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            if (cause instanceof Error error)
+                throw error;
+            throw new IllegalStateException("JFR worker failed", cause);
+        } finally {
+            // Pool threads outlive the read, so parts still being read after a failure or cancellation are interrupted
+            for (Future<T> worker : workers) {
+                worker.cancel(true);
+            }
+            executor.shutdown();
+        }
+    }
+
+    private Map<ProfilingMetricProcessingMethod, EventAggregator> dispatchChunk(MethodTable methodTable, Path recording, RecordingChunk chunk,
+                                                                                 ProcessingProgress progress) throws IOException {
+        Path chunkFile = chunk.extract(recording);
+        try {
+            return dispatchFile(methodTable, chunkFile, progress);
+        } finally {
+            Files.deleteIfExists(chunkFile);
+        }
+    }
+
+    /**
+     * Reads a whole file on the calling thread.
+     */
+    private Map<ProfilingMetricProcessingMethod, EventAggregator> dispatchFile(MethodTable methodTable, Path file, ProcessingProgress progress)
+            throws IOException {
+        Map<ProfilingMetricProcessingMethod, EventAggregator> aggregators = createAggregators(methodTable);
+
+        try (RecordingFile recordingFile = new RecordingFile(file)) {
+            long eventCount = 0;
+            while (recordingFile.hasMoreEvents()) {
+                RecordedEvent event = recordingFile.readEvent();
+                if (++eventCount % CANCELLATION_CHECK_INTERVAL_EVENTS == 0)
+                    progress.checkCanceled();
+                if (subscribersByEventType.containsKey(event.getEventType().getName()))
+                    route(aggregators, event);
+            }
+        }
+        return aggregators;
+    }
+
+    /**
+     * Returns how many events have been routed to subscribers so far, by any thread.
+     */
+    long getRoutedEventCount() {
+        return routedEvents.sum();
+    }
+
+    Map<ProfilingMetricProcessingMethod, EventAggregator> createAggregators(MethodTable methodTable) {
+        Map<ProfilingMetricProcessingMethod, EventAggregator> aggregators = new LinkedHashMap<>();
+        for (ProfilingMetricProcessingMethod subscriber : subscribers) {
+            aggregators.put(subscriber, subscriber.createAggregator(methodTable));
+        }
+        return aggregators;
+    }
+
+    private void route(Map<ProfilingMetricProcessingMethod, EventAggregator> aggregators, RecordedEvent event) {
+        routedEvents.increment();
+        for (ProfilingMetricProcessingMethod subscriber : subscribersByEventType.get(event.getEventType().getName())) {
+            aggregators.get(subscriber).accept(event);
+        }
+    }
+
+    private interface PartDispatcher<T> {
+
+        void dispatch(T part) throws IOException;
+    }
+
+    /**
+     * Merges the aggregators of finished chunks and workers as they come in, from whichever thread they finished on.
+     * Partial results are computed from snapshots on a thread of their own, so that workers only wait for the merges.
+     */
+    private final class Accumulator {
+
+        private final Map<ProfilingMetricProcessingMethod, EventAggregator> aggregators;
+        private final MethodTable methodTable;
+        private final ProcessingProgress progress;
+        private long lastSnapshotNanos = System.nanoTime();
+        // Created with the first snapshot. Snapshots are skipped while the previous one is still being published
+        private ExecutorService snapshotPublisher = null;
+        private boolean publishing = false;
+        private boolean closed = false;
+
+        Accumulator(Map<ProfilingMetricProcessingMethod, EventAggregator> aggregators, MethodTable methodTable, ProcessingProgress progress) {
+            this.aggregators = aggregators;
+            this.methodTable = methodTable;
+            this.progress = progress;
+        }
+
+        synchronized void add(Map<ProfilingMetricProcessingMethod, EventAggregator> from, double weight) {
+            aggregators.forEach((subscriber, aggregator) -> aggregator.merge(from.get(subscriber), weight));
+
+            long now = System.nanoTime();
+            if (progress.acceptsPartialResults() && !publishing && !closed && now - lastSnapshotNanos >= SNAPSHOT_INTERVAL_NANOS) {
+                Map<ProfilingMetricProcessingMethod, EventAggregator> snapshot = takeSnapshot();
+                if (snapshotPublisher == null)
+                    snapshotPublisher = workerPools.create("Profiler Lens Partial Results", 1);
+                publishing = true;
+                snapshotPublisher.execute(() -> publish(snapshot));
+                lastSnapshotNanos = now;
+            }
+        }
+
+        /**
+         * Waits for the snapshot being published, if any, so that none is published after the final results.
+         */
+        void close() throws InterruptedIOException {
+            ExecutorService publisher;
+            synchronized (this) {
+                closed = true;
+                publisher = snapshotPublisher;
+            }
+            if (publisher == null)
+                return;
+
+            publisher.shutdown();
+            try {
+                publisher.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while publishing partial results");
+            }
+        }
+
+        /**
+         * Copies the merged events into aggregators without partitions, which partial results have no use for.
+         */
+        private Map<ProfilingMetricProcessingMethod, EventAggregator> takeSnapshot() {
+            Map<ProfilingMetricProcessingMethod, EventAggregator> snapshot = new LinkedHashMap<>();
+            aggregators.forEach((subscriber, aggregator) -> {
+                EventAggregator copy = subscriber.createAggregator(methodTable, false);
+                copy.merge(aggregator);
+                snapshot.put(subscriber, copy);
+            });
+            return snapshot;
+        }
+
+        private void publish(Map<ProfilingMetricProcessingMethod, EventAggregator> snapshot) {
+            try {
+                progress.partialResultsAvailable(snapshot, methodTable);
+            } finally {
+                synchronized (this) {
+                    publishing = false;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Streams the events of a {@link RecordingFile} through a bounded queue to a set of worker threads.
+ * <p>
+ * The calling thread reads the recording and hands events over in batches, while each worker folds them into its own
+ * state. Peak memory therefore depends on the queue capacity, not on the size of the recording.
+ * <p>
+ * Every {@link #HAND_OVER_INTERVAL_BATCHES} batches, workers hand their state over and start afresh, so that the caller
+ * can look at the events read so far while the rest of the recording is still being read.
+ */
+class RecordingEventPipeline {
+
+    private static final int BATCH_SIZE = 512;
+    private static final int QUEUE_CAPACITY = 32;
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+    private static final int HAND_OVER_INTERVAL_BATCHES = 512;
+
+    // Markers are told apart by identity
+    private static final List<RecordedEvent> END_OF_STREAM = new ArrayList<>(0);
+    private static final List<RecordedEvent> HAND_OVER = new ArrayList<>(0);
+
+    private final int workerCount;
+    private final WorkerPools workerPools;
+
+    RecordingEventPipeline(WorkerPools workerPools) {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), workerPools);
+    }
+
+    RecordingEventPipeline(int workerCount, WorkerPools workerPools) {
+        this.workerCount = workerCount;
+        this.workerPools = workerPools;
+    }
+
+    /**
+     * Reads the whole recording and hands every worker state to the sink, which the caller is expected to merge. A
+     * state is only accessed by the worker that created it until it is handed over, so it does not need to be
+     * thread-safe, but the sink is called concurrently by the workers.
+     * <p>
+     * The read listener is called on the calling thread every {@link #BATCH_SIZE} events read, with the latest of them.
+     * Whatever it throws aborts the read.
+     */
+    <T> void run(RecordingFile recordingFile,
+                 Predicate<RecordedEvent> filter,
+                 Supplier<T> stateFactory,
+                 BiConsumer<T, RecordedEvent> consumer,
+                 Consumer<T> stateSink,
+                 Consumer<RecordedEvent> readListener) throws IOException {
+        BlockingQueue<List<RecordedEvent>> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        ExecutorService executor = workerPools.create("Profiler Lens JFR Event Workers", workerCount);
+        List<Future<?>> workers = new ArrayList<>(workerCount);
+
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                workers.add(executor.submit(() -> {
+                    T state = stateFactory.get();
+                    List<RecordedEvent> batch;
+                    while ((batch = queue.take()) != END_OF_STREAM) {
+                        if (batch == HAND_OVER) {
+                            stateSink.accept(state);
+                            state = stateFactory.get();
+                            continue;
+                        }
+                        for (RecordedEvent event : batch) {
+                            consumer.accept(state, event);
+                        }
+                    }
+                    stateSink.accept(state);
+                    return null;
+                }));
+            }
+
+            List<RecordedEvent> batch = new ArrayList<>(BATCH_SIZE);
+            long eventCount = 0;
+            int batchCount = 0;
+            while (recordingFile.hasMoreEvents()) {
+                RecordedEvent event = recordingFile.readEvent();
+                if (++eventCount % BATCH_SIZE == 0)
+                    readListener.accept(event);
+                if (!filter.test(event))
+                    continue;
+
+                batch.add(event);
+                if (batch.size() == BATCH_SIZE) {
+                    put(queue, batch, workers);
+                    batch = new ArrayList<>(BATCH_SIZE);
+
+                    // Not every worker necessarily takes a marker, which only delays its events to the next hand-over
+                    if (++batchCount % HAND_OVER_INTERVAL_BATCHES == 0) {
+                        for (int i = 0; i < workerCount; i++) {
+                            put(queue, HAND_OVER, workers);
+                        }
+                    }
+                }
+            }
+            if (!batch.isEmpty())
+                put(queue, batch, workers);
+            for (int i = 0; i < workerCount; i++) {
+                put(queue, END_OF_STREAM, workers);
+            }
+
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while processing JFR events");
+        } catch (ExecutionException ex) {
+            throw rethrow(ex);
+        } finally {
+            // Pool threads outlive the read, so workers still waiting for batches after a failure are interrupted
+            for (Future<?> worker : workers) {
+                worker.cancel(true);
+            }
+            executor.shutdown();
+        }
+    }
+
+    private void put(BlockingQueue<List<RecordedEvent>> queue, List<RecordedEvent> batch, List<Future<?>> workers)
+            throws InterruptedException, ExecutionException {
+        // A worker only finishes early when it fails, in which case nobody would ever drain the queue again
+        while (!queue.offer(batch, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            for (Future<?> worker : workers) {
+                if (worker.isDone())
+                    worker.get();
+            }
+        }
+    }
+
+    private RuntimeException rethrow(ExecutionException ex) {
+        Throwable cause = ex.getCause();
+        if (cause instanceof RuntimeException runtimeException)
+            return runtimeException;
+        if (cause instanceof Error error)
+            throw error;
+        return new IllegalStateException("JFR event worker failed", cause);
+    }
+}
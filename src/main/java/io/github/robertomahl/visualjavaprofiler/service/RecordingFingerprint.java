@@ -0,0 +1,47 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Identifies the content of a recording without reading all of it. Besides size and modification time, the head and
+ * the tail of the file are hashed, which covers the first chunk header and the metadata of the last chunk.
+ */
+public record RecordingFingerprint(long size, long lastModified, long contentHash) {
+
+    private static final int SAMPLE_SIZE = 1 << 20;
+
+    public static RecordingFingerprint of(Path recording) throws IOException {
+        long lastModified = Files.getLastModifiedTime(recording).toMillis();
+
+        try (FileChannel channel = FileChannel.open(recording, StandardOpenOption.READ)) {
+            long size = channel.size();
+            CRC32C crc = new CRC32C();
+            ByteBuffer buffer = ByteBuffer.allocate(SAMPLE_SIZE);
+
+            update(crc, channel, buffer, 0);
+            if (size > SAMPLE_SIZE)
+                update(crc, channel, buffer, Math.max(SAMPLE_SIZE, size - SAMPLE_SIZE));
+
+            return new RecordingFingerprint(size, lastModified, crc.getValue());
+        }
+    }
+
+    private static void update(CRC32C crc, FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+            // Keep reading until the sample is complete or the end of the file is reached
+        }
+        buffer.flip();
+        crc.update(buffer);
+    }
+
+    public String toFileName() {
+        return String.format("%016x-%016x-%08x", size, lastModified, contentHash);
+    }
+}
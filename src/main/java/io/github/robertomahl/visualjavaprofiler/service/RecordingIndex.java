@@ -0,0 +1,125 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * The aggregated events of a processed recording, kept so that results can be recomputed for another
+ * {@link ResultFilter} in a fraction of the time it takes to read the recording again.
+ */
+class RecordingIndex {
+
+    private final Map<ProfilingMetricProcessingMethod, EventAggregator> aggregators;
+    private final MethodScope methodScope;
+    private final long eventCount;
+
+    RecordingIndex(Map<ProfilingMetricProcessingMethod, EventAggregator> aggregators, MethodScope methodScope) {
+        this(aggregators, methodScope, 0);
+    }
+
+    RecordingIndex(Map<ProfilingMetricProcessingMethod, EventAggregator> aggregators, MethodScope methodScope, long eventCount) {
+        this.aggregators = aggregators;
+        this.methodScope = methodScope;
+        this.eventCount = eventCount;
+    }
+
+    /**
+     * Reads the recordings on plain thread pools, for use outside of the IDE.
+     */
+    static RecordingIndex read(List<WeightedRecording> recordings, Function<MethodTable, MethodScope> scopeResolver, ProcessingProgress progress)
+            throws IOException {
+        return read(recordings, scopeResolver, WorkerPools.PLAIN, progress);
+    }
+
+    /**
+     * Reads the recordings into a single index, so that results add up the weighted events of all of them. Scope is
+     * resolved once, over the methods of every recording.
+     */
+    static RecordingIndex read(List<WeightedRecording> recordings,
+                               Function<MethodTable, MethodScope> scopeResolver,
+                               WorkerPools workerPools,
+                               ProcessingProgress progress) throws IOException {
+        if (recordings.isEmpty())
+            throw new IllegalArgumentException("No recording to read");
+
+        MethodTable methodTable = new MethodTable();
+        RecordingEventDispatcher dispatcher = new RecordingEventDispatcher(getProcessingMethods(), workerPools);
+
+        Map<ProfilingMetricProcessingMethod, EventAggregator> aggregators = dispatcher.createAggregators(methodTable);
+        dispatcher.dispatch(recordings, methodTable, aggregators, progress);
+        return new RecordingIndex(aggregators, scopeResolver.apply(methodTable), dispatcher.getRoutedEventCount());
+    }
+
+    static List<ProfilingMetricProcessingMethod> getProcessingMethods() {
+        return Arrays.stream(ProfilingMetric.values())
+                .map(ProfilingMetric::getProcessingMethod)
+                .toList();
+    }
+
+    /**
+     * Returns how many events of the recordings were aggregated, or 0 if the index was not read from recordings.
+     */
+    long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Returns the classes that results were computed with in scope, which they are only valid for.
+     */
+    ResultScope getResultScope() {
+        return methodScope.getResultScope();
+    }
+
+    /**
+     * Returns roughly how many bytes of heap the aggregated events take, which is usually far more than their results.
+     */
+    long getEstimatedSize() {
+        long size = 0L;
+        for (EventAggregator aggregator : aggregators.values()) {
+            size += aggregator.getEstimatedSize();
+        }
+        return size;
+    }
+
+    Map<ProfilingMetric, ProcessingMethodResult> getResults(ResultFilter resultFilter) {
+        Map<ProfilingMetric, ProcessingMethodResult> resultsPerMetric = new EnumMap<>(ProfilingMetric.class);
+        for (ProfilingMetric profilingMetric : ProfilingMetric.values()) {
+            ProcessingMethodResult result = aggregators.get(profilingMetric.getProcessingMethod())
+                    .getResult(profilingMetric.getAttribution(), methodScope, resultFilter);
+            if (result != null)
+                resultsPerMetric.put(profilingMetric, result);
+        }
+        return resultsPerMetric;
+    }
+
+    /**
+     * Returns the seconds spanned by the events of every metric, or null if the recording had none.
+     */
+    TimeWindow getTimeRange() {
+        TimeWindow timeRange = null;
+        for (EventAggregator aggregator : aggregators.values()) {
+            TimeWindow aggregatorTimeRange = aggregator.getTimeRange();
+            if (aggregatorTimeRange == null)
+                continue;
+
+            timeRange = timeRange == null ? aggregatorTimeRange : new TimeWindow(
+                    Math.min(timeRange.startEpochSecond(), aggregatorTimeRange.startEpochSecond()),
+                    Math.max(timeRange.endEpochSecond(), aggregatorTimeRange.endEpochSecond()));
+        }
+        return timeRange;
+    }
+
+    Set<String> getThreadNames() {
+        Set<String> threadNames = new TreeSet<>();
+        for (EventAggregator aggregator : aggregators.values()) {
+            threadNames.addAll(aggregator.getThreadNames());
+        }
+        return threadNames;
+    }
+}
@@ -0,0 +1,25 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+/**
+ * Selects the part of a recording that results are computed for, by time and by thread.
+ */
+public record ResultFilter(TimeWindow timeWindow, ThreadFilter threadFilter) {
+
+    public static final ResultFilter ALL = new ResultFilter(TimeWindow.ALL, ThreadFilter.ALL);
+
+    public boolean isAll() {
+        return timeWindow.equals(TimeWindow.ALL) && threadFilter.isAll();
+    }
+
+    public boolean includes(long epochSecond, String threadName) {
+        return timeWindow.contains(epochSecond) && threadFilter.matches(threadName);
+    }
+
+    public ResultFilter withTimeWindow(TimeWindow timeWindow) {
+        return new ResultFilter(timeWindow, threadFilter);
+    }
+
+    public ResultFilter withThreadFilter(ThreadFilter threadFilter) {
+        return new ResultFilter(timeWindow, threadFilter);
+    }
+}
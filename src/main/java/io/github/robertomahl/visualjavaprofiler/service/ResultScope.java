@@ -0,0 +1,30 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The classes of a recording, and those of them that were within project scope when its results were computed.
+ * Results only hold for as long as the same classes are in scope, since a class coming into scope takes over samples
+ * that were attributed to its callers rather than only adding methods of its own.
+ */
+record ResultScope(Set<String> classNames, Set<String> classesInScope) {
+
+    // Rough size of a String and its array plus that of its entry in a hash set, as in CompactResults
+    private static final long CLASS_NAME_OVERHEAD_BYTES = 56 + 32;
+
+    /**
+     * Tells whether resolving the classes again puts the same ones in scope.
+     */
+    boolean isCurrent(Function<Set<String>, Set<String>> scopeResolver) {
+        return classesInScope.equals(scopeResolver.apply(classNames));
+    }
+
+    long getEstimatedSize() {
+        long size = 0;
+        for (String className : classNames) {
+            size += CLASS_NAME_OVERHEAD_BYTES + className.length();
+        }
+        return size + 32L * classesInScope.size();
+    }
+}
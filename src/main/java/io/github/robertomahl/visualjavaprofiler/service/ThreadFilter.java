@@ -0,0 +1,95 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Thread name patterns, such as {@code http-nio-*} or {@code worker-1}, where {@code *} matches any run of characters.
+ * A thread passes the filter when its name matches any of the patterns, and every thread passes a filter without
+ * patterns.
+ */
+public final class ThreadFilter {
+
+    public static final ThreadFilter ALL = new ThreadFilter(List.of());
+
+    private static final String PATTERN_SEPARATOR = ",";
+    private static final Pattern THREAD_NUMBER_PATTERN = Pattern.compile("\\d+$");
+
+    private final List<String> patterns;
+    private final List<Pattern> compiledPatterns;
+
+    private ThreadFilter(List<String> patterns) {
+        this.patterns = patterns;
+        this.compiledPatterns = patterns.stream()
+                .map(pattern -> Pattern.compile(Arrays.stream(pattern.split("\\*", -1))
+                        .map(Pattern::quote)
+                        .reduce((left, right) -> left + ".*" + right)
+                        .orElse("")))
+                .toList();
+    }
+
+    /**
+     * Parses patterns separated by commas. Blank input yields {@link #ALL}.
+     */
+    public static ThreadFilter parse(String input) {
+        List<String> patterns = Arrays.stream(input.split(PATTERN_SEPARATOR))
+                .map(String::trim)
+                .filter(pattern -> !pattern.isEmpty())
+                .toList();
+        return patterns.isEmpty() ? ALL : new ThreadFilter(patterns);
+    }
+
+    public boolean isAll() {
+        return patterns.isEmpty();
+    }
+
+    public boolean matches(String threadName) {
+        if (isAll())
+            return true;
+
+        for (Pattern compiledPattern : compiledPatterns) {
+            if (compiledPattern.matcher(threadName).matches())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the patterns that match none of the given thread names, which would silently select nothing.
+     */
+    public List<String> getUnmatchedPatterns(Collection<String> threadNames) {
+        List<String> unmatchedPatterns = new ArrayList<>();
+        for (int index = 0; index < patterns.size(); index++) {
+            Pattern compiledPattern = compiledPatterns.get(index);
+            if (threadNames.stream().noneMatch(threadName -> compiledPattern.matcher(threadName).matches()))
+                unmatchedPatterns.add(patterns.get(index));
+        }
+        return unmatchedPatterns;
+    }
+
+    /**
+     * Threads of a pool only differ by their trailing number, so "http-nio-8080-exec-12" is grouped as
+     * "http-nio-8080-exec-*", which is also a pattern matching every thread of the pool.
+     */
+    public static String toThreadGroup(String threadName) {
+        return THREAD_NUMBER_PATTERN.matcher(threadName).replaceFirst("*");
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof ThreadFilter threadFilter && patterns.equals(threadFilter.patterns);
+    }
+
+    @Override
+    public int hashCode() {
+        return patterns.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return String.join(PATTERN_SEPARATOR + " ", patterns);
+    }
+}
@@ -0,0 +1,17 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+/**
+ * Range of epoch seconds that results are computed for, from the start second inclusive to the end second exclusive.
+ */
+public record TimeWindow(long startEpochSecond, long endEpochSecond) {
+
+    public static final TimeWindow ALL = new TimeWindow(Long.MIN_VALUE, Long.MAX_VALUE);
+
+    public boolean contains(long epochSecond) {
+        return epochSecond >= startEpochSecond && epochSecond < endEpochSecond;
+    }
+
+    public long getDurationSeconds() {
+        return endEpochSecond - startEpochSecond;
+    }
+}
@@ -0,0 +1,46 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A recording to be merged with others, with the factor its weights are scaled by, e.g. to account for nodes that
+ * served more traffic than others during their recordings.
+ */
+public record WeightedRecording(Path path, double weight) {
+
+    private static final String WEIGHT_SEPARATOR = ",";
+
+    public WeightedRecording {
+        if (!(weight > 0) || Double.isInfinite(weight))
+            throw new IllegalArgumentException("Weight of " + path + " must be a positive number, not " + weight);
+    }
+
+    public static WeightedRecording of(Path path) {
+        return new WeightedRecording(path, 1.0);
+    }
+
+    /**
+     * Pairs the recordings with weights separated by commas, in the same order. Blank input weighs them all equally.
+     */
+    public static List<WeightedRecording> withWeights(List<Path> recordings, String weights) {
+        if (weights.isBlank())
+            return recordings.stream().map(WeightedRecording::of).toList();
+
+        List<String> values = Arrays.stream(weights.split(WEIGHT_SEPARATOR)).map(String::trim).toList();
+        if (values.size() != recordings.size())
+            throw new IllegalArgumentException("Expected " + recordings.size() + " weights, got " + values.size());
+
+        List<WeightedRecording> weightedRecordings = new ArrayList<>(recordings.size());
+        for (int i = 0; i < recordings.size(); i++) {
+            try {
+                weightedRecordings.add(new WeightedRecording(recordings.get(i), Double.parseDouble(values.get(i))));
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Weight of " + recordings.get(i) + " is not a number: " + values.get(i));
+            }
+        }
+        return weightedRecordings;
+    }
+}
@@ -0,0 +1,16 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the thread pools that recordings are read on. Inside the IDE these are bounded views of the application pool,
+ * which names, tracks and shuts down its threads, while the headless aggregator runs without an application.
+ */
+@FunctionalInterface
+interface WorkerPools {
+
+    WorkerPools PLAIN = (name, maxThreads) -> Executors.newFixedThreadPool(maxThreads);
+
+    ExecutorService create(String name, int maxThreads);
+}
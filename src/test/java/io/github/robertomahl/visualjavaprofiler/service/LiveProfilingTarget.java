@@ -0,0 +1,27 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+/**
+ * Keeps a CPU busy in a JVM of its own, so that live profiling has samples to follow. Exits by itself after a minute
+ * in case the test that started it could not stop it.
+ */
+public class LiveProfilingTarget {
+
+    private static final long RUN_TIME_NANOS = 60_000_000_000L;
+
+    public static void main(String[] args) {
+        long deadline = System.nanoTime() + RUN_TIME_NANOS;
+        long checksum = 0;
+        while (System.nanoTime() < deadline) {
+            checksum = spin(checksum);
+        }
+        System.out.println(checksum);
+    }
+
+    static long spin(long seed) {
+        long value = seed;
+        for (int i = 0; i < 100_000; i++) {
+            value = value * 31 + i;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Follows a child JVM recording with Flight Recorder, the way live profiling follows a JVM picked by the user.
+ */
+public class LiveProfilingTest extends BasePlatformTestCase {
+
+    private static final int TIMEOUT_SECONDS = 30;
+
+    // Same class as the one run by the child JVM, so that its samples are within project scope
+    private static final String TARGET_SOURCE = """
+            package io.github.robertomahl.visualjavaprofiler.service;
+
+            public class LiveProfilingTarget {
+                public static void main(String[] args) {
+                }
+
+                static long spin(long seed) {
+                    return seed;
+                }
+            }
+            """;
+
+    private Process target;
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            getProject().getService(JFRProcessingService.class).stopLiveProfiling();
+            if (target != null)
+                target.destroyForcibly().waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (Throwable e) {
+            addSuppressedException(e);
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testPublishesResultsOfAttachedJvm() throws Exception {
+        myFixture.addClass(TARGET_SOURCE);
+        target = startTarget();
+
+        JFRProcessingService jfrProcessingService = getProject().getService(JFRProcessingService.class);
+        AtomicBoolean published = new AtomicBoolean(false);
+        getProject().getMessageBus().connect(getTestRootDisposable()).subscribe(ProfilingResultsListener.TOPIC, () -> {
+            if (jfrProcessingService.isProfilingResultsProcessed() && jfrProcessingService.getProfilingResults().hasValues())
+                published.set(true);
+        });
+
+        jfrProcessingService.startLiveProfiling(findRepository(jfrProcessingService));
+
+        // Scope is resolved in read actions, which the events dispatched while waiting let run
+        PlatformTestUtil.waitWithEventsDispatching("No live results were published", published::get, TIMEOUT_SECONDS);
+        assertTrue(jfrProcessingService.isLiveProfiling());
+        assertTrue(jfrProcessingService.getProfilingResults().getResultMap().keySet().stream()
+                .allMatch(methodIdentifier -> methodIdentifier.startsWith(LiveProfilingTarget.class.getName() + ".")));
+    }
+
+    private static Process startTarget() throws Exception {
+        Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+        Path classes = Path.of(LiveProfilingTarget.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        return new ProcessBuilder(java.toString(), "-XX:StartFlightRecording", "-cp", classes.toString(), LiveProfilingTarget.class.getName())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+    }
+
+    /**
+     * Attaches until the child JVM accepts attach requests and its recording has created a repository.
+     */
+    private Path findRepository(JFRProcessingService jfrProcessingService) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (true) {
+            try {
+                Path repository = jfrProcessingService.findJfrRepository(String.valueOf(target.pid()));
+                if (repository != null)
+                    return repository;
+            } catch (IOException ex) {
+                if (System.nanoTime() > deadline)
+                    throw ex;
+            }
+            assertTrue("The child JVM exited early", target.isAlive());
+            assertTrue("Flight Recorder did not start in the child JVM", System.nanoTime() < deadline);
+            Thread.sleep(100);
+        }
+    }
+}
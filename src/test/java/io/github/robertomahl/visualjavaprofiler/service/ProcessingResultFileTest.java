@@ -0,0 +1,104 @@
+package io.github.robertomahl.visualjavaprofiler.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import jdk.jfr.Recording;
+import junit.framework.TestCase;
+
+/**
+ * Writes results of recordings made by the test and reads them back, as the headless aggregator and the plugin do.
+ */
+public class ProcessingResultFileTest extends TestCase {
+
+    private static final long RECORDING_NANOS = 2_000_000_000L;
+    private static final int COLD_CALL_INTERVAL = 20;
+
+    private Path directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = Files.createTempDirectory("profiler-lens-test");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testWritesResultsOfRecordingsWithSmallWeights() throws Exception {
+        Path recording = record(directory.resolve("spin.jfr"));
+        Predicate<String> isClassInScope = className -> className.equals(ProcessingResultFileTest.class.getName());
+
+        // Weighs both recordings so that the hottest method is left with a value of 2, while the coldest rounds to 0
+        ProcessingMethodResult unweightedResult = RecordingAggregator.aggregate(List.of(recording), isClassInScope)
+                .get(ProfilingMetric.METHOD_RUN_COUNT);
+        double weight = 1.0 / unweightedResult.getMaxValue();
+        assertTrue("The coldest method was sampled too often", Math.round(2 * weight * unweightedResult.getMinValue()) == 0);
+
+        Map<ProfilingMetric, ProcessingMethodResult> resultsPerMetric = RecordingAggregator.aggregateWeighted(
+                WeightedRecording.withWeights(List.of(recording, recording), weight + ", " + weight), isClassInScope);
+
+        Path resultFile = directory.resolve("weighted.plrs");
+        ProcessingResultFile.write(resultFile, resultsPerMetric);
+        Map<ProfilingMetric, ProcessingMethodResult> readResultsPerMetric = ProcessingResultFile.read(resultFile);
+
+        assertEquals(resultsPerMetric.keySet(), readResultsPerMetric.keySet());
+        resultsPerMetric.forEach((profilingMetric, result) -> {
+            ProcessingMethodResult readResult = readResultsPerMetric.get(profilingMetric);
+            assertEquals(result.getTotalValue(), readResult.getTotalValue());
+            assertEquals(result.getResultMap(), readResult.getResultMap());
+            assertEquals(result.getLineResultMap().keySet(), readResult.getLineResultMap().keySet());
+            assertTrue(result.getResultMap().keySet().containsAll(result.getLineResultMap().keySet()));
+        });
+        assertTrue(resultsPerMetric.get(ProfilingMetric.METHOD_RUN_COUNT).hasValues());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.noneMatch(file -> file.getFileName().toString().endsWith(".tmp")));
+        }
+    }
+
+    private static Path record(Path path) throws IOException {
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.ExecutionSample").withPeriod(Duration.ofMillis(1));
+            recording.start();
+            long deadline = System.nanoTime() + RECORDING_NANOS;
+            long checksum = 0;
+            for (int i = 0; System.nanoTime() < deadline; i++) {
+                checksum = i % COLD_CALL_INTERVAL == 0 ? cold(checksum) : hot(checksum);
+            }
+            recording.stop();
+            recording.dump(path);
+            assertTrue(checksum != 1);
+        }
+        return path;
+    }
+
+    private static long hot(long seed) {
+        long value = seed;
+        for (int i = 0; i < 10_000; i++) {
+            value = value * 31 + i;
+        }
+        return value;
+    }
+
+    private static long cold(long seed) {
+        long value = seed;
+        for (int i = 0; i < 10_000; i++) {
+            value = value * 17 + i;
+        }
+        return value;
+    }
+}